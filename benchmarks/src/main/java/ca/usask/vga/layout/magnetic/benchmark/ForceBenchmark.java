@@ -0,0 +1,89 @@
+package ca.usask.vga.layout.magnetic.benchmark;
+
+import ca.usask.vga.layout.magnetic.force.HierarchyForce;
+import ca.usask.vga.layout.magnetic.force.MagneticForce;
+import ca.usask.vga.layout.magnetic.force.PinForce;
+import ca.usask.vga.layout.magnetic.util.PoleClassifier;
+import org.openjdk.jmh.annotations.*;
+import prefuse.util.force.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one accumulation of a single force over every item and spring of a synthetic graph,
+ * which is the work done by the force at every step of the simulation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForceBenchmark {
+
+    public enum ForceType {
+        NBODY, SPRING, MAGNETIC, PIN, HIERARCHY
+    }
+
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+
+    @Param({"SCALE_FREE", "PACKAGE_TREE"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"8"})
+    public int poles;
+
+    @Param({"NBODY", "SPRING", "MAGNETIC", "PIN", "HIERARCHY"})
+    public ForceType force;
+
+    private BenchmarkSimulator m_fsim;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StateMonitor monitor = new StateMonitor();
+        SyntheticGraph graph = new SyntheticGraph(shape, nodes, poles, 0);
+        m_fsim = new BenchmarkSimulator(monitor);
+        PoleClassifier classifier = graph.addTo(m_fsim);
+        m_fsim.addForce(newForce(force, classifier, monitor));
+    }
+
+    static Force newForce(ForceType type, PoleClassifier classifier, StateMonitor monitor) {
+        switch (type) {
+            case NBODY: return new NBodyForce(NBodyForce.DEFAULT_GRAV_CONSTANT, NBodyForce.DEFAULT_DISTANCE,
+                    NBodyForce.DEFAULT_THETA, monitor);
+            case SPRING: return new SpringForce();
+            case MAGNETIC: return new MagneticForce(classifier, 1e-4f, 1, 1);
+            case PIN: return new PinForce(classifier);
+            default: return new HierarchyForce(classifier, HierarchyForce.Type.SINE_FUNCTION, 1e-4f, 250);
+        }
+    }
+
+    @Benchmark
+    public float accumulate() {
+        m_fsim.accumulateForces();
+        return m_fsim.firstForce();
+    }
+
+    /**
+     * Gives the benchmarks access to the accumulation of the forces, without integrating them.
+     */
+    static class BenchmarkSimulator extends ForceSimulator {
+
+        private ForceItem first;
+
+        BenchmarkSimulator(StateMonitor monitor) {
+            super(monitor);
+        }
+
+        void accumulateForces() {
+            accumulate();
+        }
+
+        float firstForce() {
+            if (first == null) first = getItems().next();
+            return first.force[0];
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package ca.usask.vga.layout.magnetic.benchmark;
+
+import org.cytoscape.model.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * A minimal Cytoscape network held in memory, built from a {@link SyntheticGraph}, so that the
+ * {@link ca.usask.vga.layout.magnetic.poles.PoleManager} can be benchmarked without Cytoscape.
+ * The network, nodes, edges, tables and rows are dynamic proxies that implement the methods
+ * used by the PoleManager; every other method throws {@link UnsupportedOperationException}.
+ * Nodes are named "n0", "n1", ... after their index in the graph.
+ */
+public class InMemoryNetwork {
+
+    private long nextSUID = 1;
+
+    public final CyNetwork network;
+    public final List<CyNode> nodes;
+    public final List<CyEdge> edges;
+
+    private final Map<Long, CyNode> nodesBySUID = new HashMap<>();
+
+    public InMemoryNetwork(SyntheticGraph graph) {
+        long networkSUID = nextSUID++;
+
+        nodes = new ArrayList<>(graph.nodeCount);
+        for (int i = 0; i < graph.nodeCount; i++) {
+            long suid = nextSUID++;
+            CyNode node = proxy(CyNode.class, (name, args) -> {
+                if (name.equals("getSUID")) return suid;
+                return unsupported(CyNode.class, name);
+            });
+            nodes.add(node);
+            nodesBySUID.put(suid, node);
+        }
+
+        edges = new ArrayList<>(graph.getEdgeCount());
+        for (int e = 0; e < graph.getEdgeCount(); e++) {
+            long suid = nextSUID++;
+            CyNode source = nodes.get(graph.edgeSource[e]), target = nodes.get(graph.edgeTarget[e]);
+            edges.add(proxy(CyEdge.class, (name, args) -> {
+                switch (name) {
+                    case "getSUID": return suid;
+                    case "getSource": return source;
+                    case "getTarget": return target;
+                    case "isDirected": return true;
+                    default: return unsupported(CyEdge.class, name);
+                }
+            }));
+        }
+
+        CyTable networkTable = newTable();
+        CyTable nodeTable = newTable();
+        CyTable edgeTable = newTable();
+        for (int i = 0; i < nodes.size(); i++)
+            nodeTable.getRow(nodes.get(i).getSUID()).set(CyNetwork.NAME, "n" + i);
+
+        network = proxy(CyNetwork.class, (name, args) -> {
+            switch (name) {
+                case "getSUID": return networkSUID;
+                case "getNodeList": return Collections.unmodifiableList(nodes);
+                case "getEdgeList": return Collections.unmodifiableList(edges);
+                case "getNodeCount": return nodes.size();
+                case "getEdgeCount": return edges.size();
+                case "getNode": return nodesBySUID.get((Long) args[0]);
+                case "getDefaultNetworkTable": return networkTable;
+                case "getDefaultNodeTable": return nodeTable;
+                case "getDefaultEdgeTable": return edgeTable;
+                default: return unsupported(CyNetwork.class, name);
+            }
+        });
+    }
+
+    /**
+     * Returns a network manager without any network, to create a PoleManager.
+     */
+    public static CyNetworkManager emptyNetworkManager() {
+        return proxy(CyNetworkManager.class, (name, args) -> {
+            if (name.equals("getNetworkSet")) return Collections.emptySet();
+            return unsupported(CyNetworkManager.class, name);
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String name, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler h = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                // Identity semantics, as the PoleManager keys its maps by network and node
+                switch (method.getName()) {
+                    case "hashCode": if (args == null) return System.identityHashCode(proxy); break;
+                    case "equals": if (args != null && args.length == 1) return proxy == args[0]; break;
+                    case "toString": if (args == null) return type.getSimpleName() + "@" + System.identityHashCode(proxy); break;
+                }
+                return handler.invoke(method.getName(), args == null ? new Object[0] : args);
+            }
+        };
+        return (T) Proxy.newProxyInstance(InMemoryNetwork.class.getClassLoader(), new Class<?>[] {type}, h);
+    }
+
+    private static Object unsupported(Class<?> type, String method) {
+        throw new UnsupportedOperationException(type.getSimpleName() + "." + method);
+    }
+
+    /**
+     * The column name used by Cytoscape for a column in the given namespace.
+     */
+    private static String columnName(Object[] args, int nameIndex) {
+        if (nameIndex == 0 || args[0] == null) return (String) args[nameIndex];
+        return args[0] + "::" + args[nameIndex];
+    }
+
+    private CyTable newTable() {
+        long suid = nextSUID++;
+        Map<String, CyColumn> columns = new HashMap<>();
+        Map<Object, Map<String, Object>> rows = new HashMap<>();
+
+        return proxy(CyTable.class, (name, args) -> {
+            switch (name) {
+                case "getSUID": return suid;
+                case "getColumn":
+                    return columns.get(columnName(args, args.length - 1));
+                case "createColumn":
+                case "createListColumn": {
+                    String column = columnName(args, args.length - 3);
+                    columns.put(column, proxy(CyColumn.class, (n, a) -> {
+                        if (n.equals("getName")) return column;
+                        return unsupported(CyColumn.class, n);
+                    }));
+                    return null;
+                }
+                case "getRow":
+                    return newRow(rows.computeIfAbsent(args[0], k -> new HashMap<>()));
+                case "getRowCount": return rows.size();
+                case "getMatchingKeys": {
+                    List<Object> keys = new ArrayList<>();
+                    for (var row : rows.entrySet())
+                        if (Objects.equals(row.getValue().get((String) args[0]), args[1]))
+                            keys.add(row.getKey());
+                    return keys;
+                }
+                default: return unsupported(CyTable.class, name);
+            }
+        });
+    }
+
+    private static CyRow newRow(Map<String, Object> values) {
+        return proxy(CyRow.class, (name, args) -> {
+            switch (name) {
+                case "get":
+                case "getList":
+                    return values.get(columnName(args, args.length - 2));
+                case "set":
+                    values.put(columnName(args, args.length - 2), args[args.length - 1]);
+                    return null;
+                case "isSet":
+                    return values.get(columnName(args, args.length - 1)) != null;
+                default: return unsupported(CyRow.class, name);
+            }
+        });
+    }
+
+}
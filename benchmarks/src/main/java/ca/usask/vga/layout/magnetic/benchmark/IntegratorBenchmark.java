@@ -0,0 +1,88 @@
+package ca.usask.vga.layout.magnetic.benchmark;
+
+import ca.usask.vga.layout.magnetic.force.MagneticForce;
+import ca.usask.vga.layout.magnetic.util.PoleClassifier;
+import org.openjdk.jmh.annotations.*;
+import prefuse.util.force.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one step of the simulation with each integrator, with the default forces of the layout:
+ * repulsion, springs, drag and the magnetic force. The graph is moved back to its initial layout
+ * before every measurement iteration, so that all the integrators start from the same state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IntegratorBenchmark {
+
+    public enum IntegratorType {
+        EULER, RUNGE_KUTTA, BACKWARD_EULER, VERLET, ARRAY_EULER, ARRAY_RUNGE_KUTTA, ARRAY_VERLET;
+
+        ForceSimulator newSimulator(StateMonitor monitor) {
+            switch (this) {
+                case EULER: return new ForceSimulator(new EulerIntegrator(monitor), monitor);
+                case BACKWARD_EULER: return new ForceSimulator(new BackwardEulerIntegrator(monitor), monitor);
+                case VERLET: return new ForceSimulator(new VerletIntegrator(monitor), monitor);
+                case ARRAY_EULER: return new ArrayForceSimulator(new ArrayEulerIntegrator(monitor), monitor);
+                case ARRAY_RUNGE_KUTTA: return new ArrayForceSimulator(new ArrayRungeKuttaIntegrator(monitor), monitor);
+                case ARRAY_VERLET: return new ArrayForceSimulator(new ArrayVerletIntegrator(monitor), monitor);
+                default: return new ForceSimulator(new RungeKuttaIntegrator(monitor), monitor);
+            }
+        }
+    }
+
+    /** Time step of the first iteration of the layout. */
+    private static final long TIMESTEP = 1000L;
+
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+
+    @Param({"SCALE_FREE", "PACKAGE_TREE"})
+    public SyntheticGraph.Shape shape;
+
+    @Param({"8"})
+    public int poles;
+
+    @Param({"EULER", "RUNGE_KUTTA", "BACKWARD_EULER", "VERLET", "ARRAY_EULER", "ARRAY_RUNGE_KUTTA", "ARRAY_VERLET"})
+    public IntegratorType integrator;
+
+    /** Whether the repulsion quadtree is refit between the force evaluations of a step. */
+    @Param({"false", "true"})
+    public boolean refit;
+
+    private SyntheticGraph graph;
+    private ForceSimulator m_fsim;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StateMonitor monitor = new StateMonitor();
+        graph = new SyntheticGraph(shape, nodes, poles, 0);
+        m_fsim = integrator.newSimulator(monitor);
+        PoleClassifier classifier = graph.addTo(m_fsim);
+
+        NBodyForce repulsion = new NBodyForce(NBodyForce.DEFAULT_GRAV_CONSTANT, NBodyForce.DEFAULT_DISTANCE,
+                NBodyForce.DEFAULT_THETA, monitor);
+        repulsion.setRefit(refit);
+        m_fsim.addForce(repulsion);
+        m_fsim.addForce(new SpringForce());
+        m_fsim.addForce(new DragForce());
+        m_fsim.addForce(new MagneticForce(classifier, 1e-4f, 1, 1));
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        graph.reset(m_fsim);
+    }
+
+    @Benchmark
+    public ForceSimulator step() {
+        m_fsim.runSimulator(TIMESTEP);
+        return m_fsim;
+    }
+
+}
@@ -0,0 +1,100 @@
+package ca.usask.vga.layout.magnetic.benchmark;
+
+import ca.usask.vga.layout.magnetic.poles.PoleManager;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the slowest interactive operations of the {@link PoleManager} on an {@link InMemoryNetwork}:
+ * the shortest distances from the poles, the closest poles of every node, and the update of the tables.
+ * The caches of the PoleManager are erased before every operation, as they are after a change to the poles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PoleManagerBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+
+    @Param({"1", "2", "4"})
+    public int edgesPerNode;
+
+    @Param({"2", "8", "32"})
+    public int poles;
+
+    private BenchmarkPoleManager poleManager;
+    private CyNetwork network;
+    private CyNode firstPole;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticGraph graph = new SyntheticGraph(SyntheticGraph.Shape.SCALE_FREE, nodes, edgesPerNode, poles, 0);
+        InMemoryNetwork memory = new InMemoryNetwork(graph);
+        network = memory.network;
+
+        poleManager = new BenchmarkPoleManager();
+        for (int p = 0; p < graph.poles.length; p++) {
+            CyNode pole = memory.nodes.get(graph.poles[p]);
+            poleManager.addPole(network, pole);
+            poleManager.setPoleDirection(network, pole, graph.poleIsOutwards[p]);
+        }
+        firstPole = memory.nodes.get(graph.poles[0]);
+
+        // Index the network once, as the engine is kept until the network changes
+        poleManager.updateTables(network);
+    }
+
+    @Benchmark
+    public short[] shortestDistances() {
+        poleManager.invalidateNetworkCache(network);
+        return poleManager.getShortestDistancesFrom(network, firstPole);
+    }
+
+    @Benchmark
+    public void closestPoles(Blackhole bh) {
+        // The distances stay cached, only the closest pole table is computed again
+        poleManager.invalidateClosestPoles(network);
+        for (CyNode node : network.getNodeList())
+            bh.consume(poleManager.getClosestPoles(network, node));
+    }
+
+    @Benchmark
+    public void updateTables() {
+        poleManager.invalidateNetworkCache(network);
+        poleManager.updateTables(network);
+    }
+
+    /**
+     * Gives the benchmarks access to the caches of the PoleManager.
+     */
+    static class BenchmarkPoleManager extends PoleManager {
+
+        BenchmarkPoleManager() {
+            super(InMemoryNetwork.emptyNetworkManager(), null);
+        }
+
+        @Override
+        protected short[] getShortestDistancesFrom(CyNetwork network, CyNode pole) {
+            return super.getShortestDistancesFrom(network, pole);
+        }
+
+        @Override
+        protected void invalidateNetworkCache(CyNetwork network) {
+            super.invalidateNetworkCache(network);
+        }
+
+        @Override
+        protected void invalidateClosestPoles(CyNetwork network) {
+            super.invalidateClosestPoles(network);
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package ca.usask.vga.layout.magnetic.benchmark;
+
+import ca.usask.vga.layout.magnetic.poles.PoleDistanceEngine;
+import ca.usask.vga.layout.magnetic.util.ArrayPoleClassifier;
+import ca.usask.vga.layout.magnetic.util.IndexedPoleClassifier;
+import prefuse.util.force.ForceItem;
+import prefuse.util.force.ForceSimulator;
+import prefuse.util.force.Spring;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A directed graph generated from a seed, with poles chosen among the nodes of highest degree,
+ * used as the input of the benchmarks. The same size, shape and seed always give the same graph.
+ */
+public class SyntheticGraph {
+
+    public enum Shape {
+        /** Preferential attachment, every new node depends on a few existing nodes. */
+        SCALE_FREE,
+        /** A tree of packages and classes, with a few dependencies between the classes. */
+        PACKAGE_TREE
+    }
+
+    public static final float MASS = 3f, SPRING_COEFFICIENT = 1e-4f, SPRING_LENGTH = 50f;
+    public static final int DEFAULT_EDGES_PER_NODE = 2;
+    private static final int PACKAGE_BRANCHING = 4, DEPENDENCY_RATIO = 4;
+
+    public final int nodeCount;
+    public final int[] edgeSource, edgeTarget;
+    public final int[] poles;
+    public final boolean[] poleIsOutwards;
+    public final PoleDistanceEngine engine;
+
+    private final float[] initialX, initialY;
+
+    public SyntheticGraph(Shape shape, int nodeCount, int poleCount, long seed) {
+        this(shape, nodeCount, DEFAULT_EDGES_PER_NODE, poleCount, seed);
+    }
+
+    /**
+     * @param edgesPerNode the number of edges added with every new node of the scale-free shape,
+     *                     not used by the package tree
+     */
+    public SyntheticGraph(Shape shape, int nodeCount, int edgesPerNode, int poleCount, long seed) {
+        Random random = new Random(seed);
+        this.nodeCount = nodeCount;
+
+        int[][] edges = shape == Shape.SCALE_FREE ? scaleFree(nodeCount, edgesPerNode, random)
+                : packageTree(nodeCount, random);
+        edgeSource = edges[0];
+        edgeTarget = edges[1];
+        engine = new PoleDistanceEngine(nodeCount, edgeSource, edgeTarget);
+
+        poles = highestDegree(Math.min(poleCount, nodeCount));
+        poleIsOutwards = new boolean[poles.length];
+        for (int p = 0; p < poles.length; p++)
+            poleIsOutwards[p] = p % 2 == 1;
+
+        // Spread the nodes over an area that grows with the graph
+        float size = (float) Math.sqrt(nodeCount) * SPRING_LENGTH;
+        initialX = new float[nodeCount];
+        initialY = new float[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            initialX[i] = random.nextFloat() * size;
+            initialY[i] = random.nextFloat() * size;
+        }
+    }
+
+    public int getEdgeCount() {
+        return edgeSource.length;
+    }
+
+    private static int[][] scaleFree(int n, int edgesPerNode, Random random) {
+        // Barabasi-Albert: the targets are picked from the endpoints of the existing edges
+        int[] source = new int[Math.max(0, (n - 1) * edgesPerNode)];
+        int[] target = new int[source.length];
+        int[] endpoints = new int[source.length * 2 + 1];
+        int edges = 0, ends = 0;
+        endpoints[ends++] = 0;
+
+        for (int i = 1; i < n; i++) {
+            int added = edges;
+            for (int k = 0; k < edgesPerNode && k < i; k++) {
+                int t = endpoints[random.nextInt(ends)];
+                if (isTargetOf(i, t, source, target, added, edges)) continue;
+                source[edges] = i;
+                target[edges] = t;
+                edges++;
+            }
+            for (int k = added; k < edges; k++) {
+                endpoints[ends++] = i;
+                endpoints[ends++] = target[k];
+            }
+        }
+        return new int[][] {Arrays.copyOf(source, edges), Arrays.copyOf(target, edges)};
+    }
+
+    private static boolean isTargetOf(int s, int t, int[] source, int[] target, int from, int to) {
+        for (int k = from; k < to; k++)
+            if (source[k] == s && target[k] == t) return true;
+        return false;
+    }
+
+    private static int[][] packageTree(int n, Random random) {
+        int dependencies = n / DEPENDENCY_RATIO;
+        int[] source = new int[Math.max(0, n - 1) + dependencies];
+        int[] target = new int[source.length];
+        int edges = 0;
+
+        // Every package contains the next nodes, breadth first
+        for (int i = 1; i < n; i++) {
+            source[edges] = (i - 1) / PACKAGE_BRANCHING;
+            target[edges] = i;
+            edges++;
+        }
+        for (int d = 0; d < dependencies && n > 1; d++) {
+            int s = random.nextInt(n), t = random.nextInt(n);
+            if (s == t) continue;
+            source[edges] = s;
+            target[edges] = t;
+            edges++;
+        }
+        return new int[][] {Arrays.copyOf(source, edges), Arrays.copyOf(target, edges)};
+    }
+
+    private int[] highestDegree(int count) {
+        Integer[] order = new Integer[nodeCount];
+        for (int i = 0; i < nodeCount; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> degree(b) - degree(a));
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) result[i] = order[i];
+        return result;
+    }
+
+    private int degree(int node) {
+        return engine.getInDegree(node) + engine.getOutDegree(node);
+    }
+
+    /**
+     * Adds the nodes and edges of the graph to the given simulator, at their initial location.
+     * @return the classifier of the added items and springs
+     */
+    public ArrayPoleClassifier addTo(ForceSimulator m_fsim) {
+        IndexedPoleClassifier indexed = new IndexedPoleClassifier(engine, poles, poleIsOutwards, edgeSource, edgeTarget);
+        ForceItem[] items = new ForceItem[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            ForceItem item = new ForceItem();
+            item.mass = MASS;
+            item.location[0] = initialX[i];
+            item.location[1] = initialY[i];
+            m_fsim.addItem(item);
+            indexed.mapNode(item, i);
+            items[i] = item;
+        }
+        for (int e = 0; e < edgeSource.length; e++) {
+            Spring s = m_fsim.addSpring(items[edgeSource[e]], items[edgeTarget[e]], SPRING_COEFFICIENT, SPRING_LENGTH);
+            indexed.mapEdge(s, e);
+        }
+
+        ArrayPoleClassifier classifier = new ArrayPoleClassifier(indexed);
+        classifier.snapshot(m_fsim);
+        return classifier;
+    }
+
+    /**
+     * Moves the items of the given simulator back to their initial location, at rest.
+     */
+    public void reset(ForceSimulator m_fsim) {
+        var iter = m_fsim.getItems();
+        while (iter.hasNext()) {
+            ForceItem item = iter.next();
+            item.location[0] = item.plocation[0] = initialX[item.index];
+            item.location[1] = item.plocation[1] = initialY[item.index];
+            item.velocity[0] = item.velocity[1] = 0;
+            item.force[0] = item.force[1] = 0;
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package ca.usask.vga.layout.magnetic;
 
+import ca.usask.vga.layout.magnetic.util.ErrorCalculator;
+import ca.usask.vga.layout.magnetic.util.PhaseEvents;
+import ca.usask.vga.layout.magnetic.util.TimestepController;
 import org.cytoscape.view.layout.*;
 import org.cytoscape.work.AbstractTask;
 import org.cytoscape.work.TaskMonitor;
@@ -9,6 +12,11 @@ import prefuse.util.force.Spring;
 import prefuse.util.force.StateMonitor;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -16,6 +24,7 @@ import java.util.*;
  * on a subset of the network.
  * @see AutoLayoutQuality
  * @see AutoLayoutVariables
+ * @see AutoLayoutSearch
  */
 public class AutoLayout extends AbstractTask {
 
@@ -38,72 +47,131 @@ public class AutoLayout extends AbstractTask {
     @Override
     public void run(TaskMonitor taskMonitor) {
 
-        // Single threaded; only works on one partition at a time.
+        // Only works on one partition at a time, but the trials can run in parallel.
         taskMonitor.showMessage(TaskMonitor.Level.INFO, "Finding parameters...");
 
         AutoLayoutQuality quality = new AutoLayoutQuality(getContext());
         AutoLayoutVariables auto = new AutoLayoutVariables(getContext());
-        Iterable<int[]> combinations = auto.getAllCombinations();
+        AutoLayoutSearch search = getContext().autoLayoutSearch.newSearch(getContext().autoLayoutBudget);
 
-        int[] bestComb = new int[auto.getVarCount()];
-        auto.setAll(bestComb);
-        float maxScore = runTrial(quality);
+        // Shared by every trial, so prepared only once
+        part.calculateEdgeWeights();
+        if (layout.context.isDeterministic) {
+            Collections.sort(part.getNodeList());
+            Collections.sort(part.getEdgeList());
+        }
 
-        float newScore;
+        int expectedTrials = search.getExpectedTrials(auto);
+        AtomicInteger done = new AtomicInteger();
 
-        int progress = 1, totalCombinations = auto.getCombinationCount();
+        AutoLayoutSearch.Trial best = search.search(auto, new AutoLayoutSearch.TrialRunner() {
+            @Override
+            public AutoLayoutSearch.Trial[] run(List<int[]> combinations, int iterations) {
+                return runTrials(combinations, iterations, quality, () ->
+                        taskMonitor.setProgress(Math.min(1, (float) done.incrementAndGet() / expectedTrials)));
+            }
 
-        for (int[] combination : combinations) {
+            @Override
+            public boolean isCancelled() {
+                return monitor.isCancelled();
+            }
+        });
 
-            if (monitor.isCancelled()) return;
+        if (monitor.isCancelled() || best == null) return;
 
-            taskMonitor.setProgress((float) progress / totalCombinations);
-            progress++;
+        taskMonitor.showMessage(TaskMonitor.Level.INFO, "Chosen combination: " + Arrays.toString(best.combination)
+                + " Score: " + best.score + " (" + search.getTrialsRun() + " trials, " + getContext().autoLayoutSearch + ")");
 
-            auto.setAll(combination);
-            newScore = runTrial(quality);
-            //taskMonitor.showMessage(TaskMonitor.Level.INFO, "Comb: " + Arrays.toString(combination) + " Score: " + newScore);
+        taskMonitor.showMessage(TaskMonitor.Level.INFO, quality.qualityToString(best.errors));
+        taskMonitor.showMessage(TaskMonitor.Level.INFO, auto.combinationToString(best.combination));
 
-            if (newScore > maxScore) {
-                maxScore = newScore;
-                bestComb = combination;
-            }
+        taskMonitor.showMessage(TaskMonitor.Level.INFO, "Applying found parameters...");
 
-        }
+        auto.setAll(best.combination);
+    }
 
-        taskMonitor.showMessage(TaskMonitor.Level.INFO, "Chosen combination: " + Arrays.toString(bestComb) + " Score: " + maxScore);
+    /**
+     * Runs a trial for each of the given combinations and scores them. The trials run on a
+     * thread pool if enabled; each has its own copy of the context and its own simulation,
+     * so they do not share any state.
+     * @return the trials in the same order as the combinations, null if cancelled or failed
+     */
+    protected AutoLayoutSearch.Trial[] runTrials(List<int[]> combinations, int iterations,
+                                                 AutoLayoutQuality quality, Runnable onTrialDone) {
+        AutoLayoutSearch.Trial[] trials = new AutoLayoutSearch.Trial[combinations.size()];
+
+        if (!getContext().parallelAutoLayout || combinations.size() < 2) {
+            for (int i = 0; i < combinations.size(); i++) {
+                if (monitor.isCancelled()) break;
+                trials[i] = runTrial(combinations.get(i), iterations, quality);
+                onTrialDone.run();
+            }
+            return trials;
+        }
 
-        taskMonitor.showMessage(TaskMonitor.Level.INFO, quality.qualityToString(layout.getErrorCalculator(part)));
-        taskMonitor.showMessage(TaskMonitor.Level.INFO, auto.combinationToString(bestComb));
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), combinations.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < combinations.size(); i++) {
+                final int trial = i;
+                futures.add(executor.submit(() -> {
+                    if (monitor.isCancelled()) return;
+                    trials[trial] = runTrial(combinations.get(trial), iterations, quality);
+                    onTrialDone.run();
+                }));
+            }
 
-        taskMonitor.showMessage(TaskMonitor.Level.INFO, "Applying found parameters...");
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return trials;
+    }
 
-        auto.setAll(bestComb);
+    /**
+     * Runs a trial simulation with the given combination and scores it.
+     */
+    public AutoLayoutSearch.Trial runTrial(int[] combination, int iterations, AutoLayoutQuality quality) {
+        PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.AUTO_LAYOUT_TRIAL)
+                .setSize(part.nodeCount(), part.edgeCount()).setCount(iterations);
+        ErrorCalculator calc = runTrial(combination, iterations);
+        float score = quality.calculateScore(calc);
+        phase.setDetail(Arrays.toString(combination) + " Score: " + score).end();
+        return new AutoLayoutSearch.Trial(combination, iterations, score, calc);
     }
 
-    public float runTrial(AutoLayoutQuality quality) {
-        runNewSimulation(TRIAL_ITERATIONS);
-        return quality.calculateScore(layout.getErrorCalculator(part));
+    /**
+     * Runs a short simulation with the parameters of the given combination,
+     * applied to a copy of the context.
+     * @return the error calculator of the simulation, to score the trial
+     */
+    public ErrorCalculator runTrial(int[] combination, int iterations) {
+        PoleMagneticLayoutContext context = (PoleMagneticLayoutContext) getContext().copy();
+        new AutoLayoutVariables(context).setAll(combination);
+        return runNewSimulation(context, iterations);
     }
 
-    protected ForceSimulator runNewSimulation(int iterations) {
+    protected ErrorCalculator runNewSimulation(PoleMagneticLayoutContext context, int iterations) {
 
+        // Each thread keeps its own maps and classifier
         layout.clearMaps();
 
-        // Calculate our edge weights
-        part.calculateEdgeWeights();
-
-        ForceSimulator m_fsim = new ForceSimulator(layout.integrator.getNewIntegrator(layout.monitor), layout.monitor);
-        layout.addSimulatorForces(m_fsim, part);
+        ForceSimulator m_fsim = layout.newForceSimulator();
+        ErrorCalculator calc = layout.addSimulatorForces(m_fsim, part, context, layout.getPoleClassifier());
 
         List<LayoutNode> nodeList = part.getNodeList();
         List<LayoutEdge> edgeList = part.getEdgeList();
 
-        if (layout.context.isDeterministic) {
-            Collections.sort(nodeList);
-            Collections.sort(edgeList);
-        }
-
         Map<LayoutNode, ForceItem> forceItems = new HashMap<>();
 
         // initialize nodes
@@ -116,7 +184,7 @@ public class AutoLayout extends AbstractTask {
                 forceItems.put(ln, fitem);
             }
 
-            fitem.mass = layout.getMassValue(ln);
+            fitem.mass = layout.getMassValue(ln, context);
             fitem.location[0] = (float) ln.getX();
             fitem.location[1] = (float) ln.getY();
             m_fsim.addItem(fitem);
@@ -128,7 +196,7 @@ public class AutoLayout extends AbstractTask {
         if (nodeList.size() > 500)
             for (LayoutNode ln : nodeList) {
                 ForceItem fitem = forceItems.get(ln);
-                if (fitem != null && Math.random() > 500f / nodeList.size() && !layout.poleClassifier.isPole(fitem)) {
+                if (fitem != null && Math.random() > 500f / nodeList.size() && !layout.getPoleClassifier().isPole(fitem)) {
                     m_fsim.removeItem(fitem);
                     forceItems.remove(ln);
                 }
@@ -145,21 +213,22 @@ public class AutoLayout extends AbstractTask {
             if (f1 == null || f2 == null)
                 continue;
 
-            Spring s = m_fsim.addSpring(f1, f2, layout.getSpringCoefficient(e), layout.getSpringLength(e));
+            Spring s = m_fsim.addSpring(f1, f2, layout.getSpringCoefficient(e, context), layout.getSpringLength(e, context));
             layout.mapSpring(e, s);
         }
 
+        layout.finishMaps(m_fsim);
+
         // perform layout
 
-        long timestep = 1000L;
+        TimestepController timestep = new TimestepController(context.adaptiveTimestep, iterations);
 
         for (int i = 0; i < iterations; i++) {
 
-            if (monitor.isCancelled()) return m_fsim;
+            if (monitor.isCancelled()) return calc;
 
-            timestep *= (1.0 - i / (double) iterations);
-            long step = timestep + 50;
-            m_fsim.runSimulator(step);
+            m_fsim.runSimulator(timestep.nextTimestep(i));
+            timestep.update(m_fsim);
 
         }
 
@@ -190,6 +259,6 @@ public class AutoLayout extends AbstractTask {
             m_fsim.runSimulator(cumulative_step);
         }*/
 
-        return m_fsim;
+        return calc;
     }
 }
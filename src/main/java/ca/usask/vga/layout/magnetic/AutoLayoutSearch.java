@@ -0,0 +1,269 @@
+package ca.usask.vga.layout.magnetic;
+
+import ca.usask.vga.layout.magnetic.util.ErrorCalculator;
+
+import java.util.*;
+
+/**
+ * Strategies used by {@link AutoLayout} to choose which parameter combinations to try.
+ * Every strategy stops after a budget of trials, so that the time spent by auto layout
+ * does not grow with the number of combinations of {@link AutoLayoutVariables}.
+ */
+public abstract class AutoLayoutSearch {
+
+    public enum Strategy {
+
+        GRID("Every combination"),
+        COORDINATE_DESCENT("Coordinate descent"),
+        SUCCESSIVE_HALVING("Successive halving");
+
+        private final String name;
+
+        Strategy(String name) {
+            this.name = name;
+        }
+
+        public String toString() {
+            return this.name;
+        }
+
+        public AutoLayoutSearch newSearch(int budget) {
+            switch (this) {
+                case COORDINATE_DESCENT: return new CoordinateDescent(budget);
+                case SUCCESSIVE_HALVING: return new SuccessiveHalving(budget);
+                default: return new Grid(budget);
+            }
+        }
+    }
+
+    /**
+     * The result of a trial simulation with one combination of parameters.
+     */
+    public static class Trial {
+        public final int[] combination;
+        public final int iterations;
+        public final float score;
+        public final ErrorCalculator errors;
+
+        public Trial(int[] combination, int iterations, float score, ErrorCalculator errors) {
+            this.combination = combination;
+            this.iterations = iterations;
+            this.score = score;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Runs trials for the given combinations, possibly in parallel.
+     */
+    public interface TrialRunner {
+        /**
+         * @return the trials in the same order as the combinations, null for the trials that did not run
+         */
+        Trial[] run(List<int[]> combinations, int iterations);
+        boolean isCancelled();
+    }
+
+    protected final int budget;
+    protected int trialsRun;
+
+    protected AutoLayoutSearch(int budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * Searches for the best combination of the given variables.
+     * @return the best trial, or null if no trial ran
+     */
+    public abstract Trial search(AutoLayoutVariables variables, TrialRunner runner);
+
+    /**
+     * Returns the number of trials that ran so far.
+     */
+    public int getTrialsRun() {
+        return trialsRun;
+    }
+
+    /**
+     * Returns the number of trials the search expects to run, for progress reporting.
+     */
+    public int getExpectedTrials(AutoLayoutVariables variables) {
+        return Math.min(budget, variables.getCombinationCount());
+    }
+
+    /**
+     * Runs the trials within the remaining budget. Combinations over the budget are not run.
+     */
+    protected Trial[] runTrials(TrialRunner runner, List<int[]> combinations, int iterations) {
+        int count = Math.min(combinations.size(), budget - trialsRun);
+        if (count <= 0 || runner.isCancelled())
+            return new Trial[0];
+        trialsRun += count;
+        return runner.run(combinations.subList(0, count), iterations);
+    }
+
+    /**
+     * Returns the first trial with the highest score, ignoring the trials that did not run.
+     */
+    protected static Trial best(Trial... trials) {
+        Trial best = null;
+        for (Trial t : trials) {
+            if (t != null && (best == null || t.score > best.score))
+                best = t;
+        }
+        return best;
+    }
+
+    /**
+     * Tries every combination in order, as long as the budget allows.
+     */
+    public static class Grid extends AutoLayoutSearch {
+
+        public Grid(int budget) {
+            super(budget);
+        }
+
+        @Override
+        public Trial search(AutoLayoutVariables variables, TrialRunner runner) {
+            // Only the combinations within the budget are generated
+            List<int[]> combinations = new ArrayList<>();
+            for (int[] combination : variables.getAllCombinations()) {
+                if (combinations.size() >= budget) break;
+                combinations.add(combination);
+            }
+            return best(runTrials(runner, combinations, AutoLayout.TRIAL_ITERATIONS));
+        }
+    }
+
+    /**
+     * Starts from the default values and changes one variable at a time, trying all of its values
+     * while the others are fixed, and keeping the best. Stops when no variable improves the score.
+     */
+    public static class CoordinateDescent extends AutoLayoutSearch {
+
+        public CoordinateDescent(int budget) {
+            super(budget);
+        }
+
+        @Override
+        public int getExpectedTrials(AutoLayoutVariables variables) {
+            int onePass = 1;
+            for (var v : variables.variables)
+                onePass += v.suggestedCount() - 1;
+            return Math.min(budget, onePass);
+        }
+
+        @Override
+        public Trial search(AutoLayoutVariables variables, TrialRunner runner) {
+            Map<String, Trial> tried = new HashMap<>();
+
+            int[] start = new int[variables.getVarCount()];
+            Trial current = best(runTrials(runner, Collections.singletonList(start), AutoLayout.TRIAL_ITERATIONS));
+            if (current == null) return null;
+            tried.put(Arrays.toString(start), current);
+
+            boolean improved = true;
+            while (improved && trialsRun < budget && !runner.isCancelled()) {
+                improved = false;
+
+                for (int i = 0; i < variables.getVarCount(); i++) {
+                    List<int[]> candidates = new ArrayList<>();
+                    for (int v = 0; v < variables.variables.get(i).suggestedCount(); v++) {
+                        int[] candidate = Arrays.copyOf(current.combination, current.combination.length);
+                        candidate[i] = v;
+                        if (!tried.containsKey(Arrays.toString(candidate)))
+                            candidates.add(candidate);
+                    }
+
+                    Trial[] trials = runTrials(runner, candidates, AutoLayout.TRIAL_ITERATIONS);
+                    for (Trial t : trials)
+                        if (t != null) tried.put(Arrays.toString(t.combination), t);
+
+                    Trial best = best(trials);
+                    if (best != null && best.score > current.score) {
+                        current = best;
+                        improved = true;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Tries a sample of the combinations with few iterations, then keeps the better half
+     * and tries it again with twice as many iterations. The best of the last round, with at
+     * most two combinations, is chosen.
+     * Every round counts its number of trials against the budget.
+     */
+    public static class SuccessiveHalving extends AutoLayoutSearch {
+
+        public SuccessiveHalving(int budget) {
+            super(budget);
+        }
+
+        @Override
+        public int getExpectedTrials(AutoLayoutVariables variables) {
+            int total = 0;
+            for (int n = getInitialCount(variables); ; n = (n + 1) / 2) {
+                total += n;
+                if (n <= 2) break;
+            }
+            return Math.min(budget, total);
+        }
+
+        private int getInitialCount(AutoLayoutVariables variables) {
+            // n + n/2 + n/4 + ... stays within the budget
+            return Math.max(1, Math.min(variables.getCombinationCount(), budget / 2));
+        }
+
+        @Override
+        public Trial search(AutoLayoutVariables variables, TrialRunner runner) {
+            // The default combination comes first and is always kept, the others are sampled
+            int count = getInitialCount(variables);
+            List<int[]> candidates = new ArrayList<>();
+            candidates.add(variables.getCombination(0));
+            for (int index : sampleIndices(variables.getCombinationCount() - 1, count - 1, new Random(0)))
+                candidates.add(variables.getCombination(index + 1));
+
+            Trial best = null;
+            int iterations = AutoLayout.TRIAL_ITERATIONS;
+
+            while (!candidates.isEmpty() && !runner.isCancelled()) {
+                Trial[] trials = runTrials(runner, candidates, iterations);
+
+                List<Trial> ranked = new ArrayList<>();
+                for (Trial t : trials)
+                    if (t != null) ranked.add(t);
+                if (ranked.isEmpty())
+                    break;
+
+                // Stable sort, so the earlier combination wins a tie
+                ranked.sort((a, b) -> Float.compare(b.score, a.score));
+                best = ranked.get(0);
+                if (ranked.size() <= 2)
+                    break;
+
+                candidates = new ArrayList<>();
+                for (int i = 0; i < (ranked.size() + 1) / 2; i++)
+                    candidates.add(ranked.get(i).combination);
+                iterations *= 2;
+            }
+            return best;
+        }
+
+        /**
+         * Draws the given number of distinct indices below the bound, without listing all of them (Floyd's algorithm).
+         */
+        private static Collection<Integer> sampleIndices(int bound, int count, Random random) {
+            Set<Integer> sample = new LinkedHashSet<>();
+            for (int j = bound - count; j < bound; j++) {
+                int index = random.nextInt(j + 1);
+                if (!sample.add(index))
+                    sample.add(j);
+            }
+            return sample;
+        }
+    }
+
+}
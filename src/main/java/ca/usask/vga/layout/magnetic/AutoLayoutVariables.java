@@ -50,6 +50,20 @@ public class AutoLayoutVariables {
         return new CombinationsIterable();
     }
 
+    /**
+     * Returns the combination at the given index, in the order of {@link #getAllCombinations()},
+     * where the first variable changes the fastest.
+     */
+    public int[] getCombination(int index) {
+        int[] combination = new int[variables.size()];
+        for (int i = 0; i < combination.length; i++) {
+            int count = variables.get(i).suggestedCount();
+            combination[i] = index % count;
+            index /= count;
+        }
+        return combination;
+    }
+
     public int getVarCount() {
         return variables.size();
     }
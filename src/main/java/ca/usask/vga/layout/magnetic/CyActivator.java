@@ -5,6 +5,7 @@ import ca.usask.vga.layout.magnetic.io.JavaReader;
 import ca.usask.vga.layout.magnetic.io.OpenSelectedFiles;
 import ca.usask.vga.layout.magnetic.io.PajekReader;
 import ca.usask.vga.layout.magnetic.poles.*;
+import org.cytoscape.application.CyApplicationConfiguration;
 import org.cytoscape.application.CyApplicationManager;
 import org.cytoscape.application.events.SetCurrentNetworkListener;
 import org.cytoscape.application.swing.CyAction;
@@ -14,7 +15,11 @@ import org.cytoscape.event.CyEventHelper;
 import org.cytoscape.io.util.StreamUtil;
 import org.cytoscape.model.CyNetworkFactory;
 import org.cytoscape.model.CyNetworkManager;
+import org.cytoscape.model.events.AddedEdgesListener;
+import org.cytoscape.model.events.AddedNodesListener;
 import org.cytoscape.model.events.NetworkAddedListener;
+import org.cytoscape.model.events.RemovedEdgesListener;
+import org.cytoscape.model.events.RemovedNodesListener;
 import org.cytoscape.model.events.SelectedNodesAndEdgesListener;
 import org.cytoscape.model.subnetwork.CyRootNetworkManager;
 import org.cytoscape.service.util.AbstractCyActivator;
@@ -86,6 +91,10 @@ public class CyActivator extends AbstractCyActivator {
 		registerService(bc, poleManager, NetworkAddedListener.class);
 		registerService(bc, poleManager, SetCurrentNetworkListener.class);
 		registerService(bc, poleManager, SessionAboutToBeLoadedListener.class);
+		registerService(bc, poleManager, AddedNodesListener.class);
+		registerService(bc, poleManager, RemovedNodesListener.class);
+		registerService(bc, poleManager, AddedEdgesListener.class);
+		registerService(bc, poleManager, RemovedEdgesListener.class);
 
 		var am = getService(bc, CyApplicationManager.class);
 		var im = getService(bc, IconManager.class);
@@ -170,7 +179,8 @@ public class CyActivator extends AbstractCyActivator {
 
 		// JAR File input
 		var jarReaderAccess = new JavaReader.CyAccess(getService(bc, CyNetworkFactory.class),
-				getService(bc, CyNetworkViewFactory.class), getService(bc, EquationCompiler.class));
+				getService(bc, CyNetworkViewFactory.class), getService(bc, EquationCompiler.class),
+				getService(bc, CyApplicationConfiguration.class));
 
 		JavaReader javaReader = JavaReader.create(jarReaderAccess, getService(bc, StreamUtil.class));
 
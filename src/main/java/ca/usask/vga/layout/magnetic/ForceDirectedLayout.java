@@ -1,9 +1,14 @@
 package ca.usask.vga.layout.magnetic;
 
+import prefuse.util.force.ArrayEulerIntegrator;
+import prefuse.util.force.ArrayIntegrator;
+import prefuse.util.force.ArrayRungeKuttaIntegrator;
+import prefuse.util.force.ArrayVerletIntegrator;
 import prefuse.util.force.EulerIntegrator;
 import prefuse.util.force.Integrator;
 import prefuse.util.force.RungeKuttaIntegrator;
 import prefuse.util.force.StateMonitor;
+import prefuse.util.force.VerletIntegrator;
 
 /* Adapted from:
  * #%L
@@ -34,7 +39,7 @@ import prefuse.util.force.StateMonitor;
 public abstract class ForceDirectedLayout {
 
 	public enum Integrators {
-		RUNGEKUTTA("Runge-Kutta"), EULER("Euler");
+		RUNGEKUTTA("Runge-Kutta"), EULER("Euler"), VERLET("Velocity Verlet");
 
 		private String name;
 
@@ -48,10 +53,19 @@ public abstract class ForceDirectedLayout {
 		}
 
 		public Integrator getNewIntegrator(StateMonitor monitor) {
-			if (this == EULER)
-				return new EulerIntegrator(monitor);
-			else
-				return new RungeKuttaIntegrator(monitor);
+			switch (this) {
+				case EULER: return new EulerIntegrator(monitor);
+				case VERLET: return new VerletIntegrator(monitor);
+				default: return new RungeKuttaIntegrator(monitor);
+			}
+		}
+
+		public ArrayIntegrator getNewArrayIntegrator(StateMonitor monitor) {
+			switch (this) {
+				case EULER: return new ArrayEulerIntegrator(monitor);
+				case VERLET: return new ArrayVerletIntegrator(monitor);
+				default: return new ArrayRungeKuttaIntegrator(monitor);
+			}
 		}
 	}
 }
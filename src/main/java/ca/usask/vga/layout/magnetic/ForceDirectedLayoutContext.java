@@ -23,6 +23,7 @@ package ca.usask.vga.layout.magnetic;
 
 import org.cytoscape.work.Tunable;
 import org.cytoscape.work.TunableValidator;
+import org.cytoscape.work.util.ListSingleSelection;
 
 
 import java.io.IOException;
@@ -31,7 +32,7 @@ import java.io.IOException;
  * Contains all the default input parameters and settings of the layout
  * Some parameters were made commented out to simplify the UI.
  */
-public class ForceDirectedLayoutContext implements TunableValidator {
+public class ForceDirectedLayoutContext implements TunableValidator, Cloneable {
 
 	protected final String PREFUSE_GROUP = "Prefuse layout";
 
@@ -57,9 +58,52 @@ public class ForceDirectedLayoutContext implements TunableValidator {
 	// @Tunable(description="Don't partition graph before layout:", gravity=800.2, /*(groups="Standard Settings",*/ context="both", longDescription="Don't partition graph before layout; boolean values only, ```true``` or ```false```; defaults to ```false```", exampleStringValue="false")
 	public boolean singlePartition;
 
+	//@Tunable(description="Multi-threaded repulsion:", context="both", longDescription="Split the repulsion force calculation across all processor cores on large networks; boolean values only, ```true``` or ```false```; defaults to ```true```", exampleStringValue="true")
+	public boolean parallelRepulsion = true;
+
+	//@Tunable(description="Reuse the repulsion quadtree:", context="both", longDescription="Move the nodes in the quadtree of the repulsion force between the evaluations of an iteration instead of rebuilding it, which is faster but slightly less accurate; boolean values only, ```true``` or ```false```; defaults to ```false```", exampleStringValue="false")
+	public boolean refitRepulsion = false;
+
+	//@Tunable(description="Array simulation backend:", context="both", longDescription="Run the simulation on flat primitive arrays instead of per-node objects; boolean values only, ```true``` or ```false```; defaults to ```false```", exampleStringValue="false")
+	public boolean useArrayBackend = false;
+
+	//@Tunable(description="Lay out partitions in parallel:", context="both", longDescription="Simulate the disconnected parts of the network at the same time on all processor cores; boolean values only, ```true``` or ```false```; defaults to ```true```", exampleStringValue="true")
+	public boolean parallelPartitions = true;
+
+	public ForceDirectedLayout.Integrators integrator = ForceDirectedLayout.Integrators.RUNGEKUTTA;
+
+	@Tunable(description="Integrator:", gravity=800.95, context="both", longDescription="Numerical method moving the nodes at every iteration; Velocity Verlet evaluates the forces once per iteration instead of four times for Runge-Kutta; enum value", exampleStringValue="Runge-Kutta")
+	public ListSingleSelection<ForceDirectedLayout.Integrators> getIntegrator() {
+		ListSingleSelection<ForceDirectedLayout.Integrators> t = new ListSingleSelection<>(ForceDirectedLayout.Integrators.values());
+		t.setSelectedValue(this.integrator);
+		return t;
+	}
+
+	public void setIntegrator(ListSingleSelection<ForceDirectedLayout.Integrators> t) {
+		this.integrator = t.getSelectedValue();
+	}
+
+	//@Tunable(description="Adaptive timestep:", context="both", longDescription="Grow the timestep while the energy of the layout decreases, and shrink it when the nodes oscillate, instead of the fixed decaying schedule; boolean values only, ```true``` or ```false```; defaults to ```false```", exampleStringValue="false")
+	public boolean adaptiveTimestep = false;
+
+	//@Tunable(description="Profile the forces:", context="both", longDescription="Measure the time spent by every force and by the integrator, and report it at the end of the layout; boolean values only, ```true``` or ```false```; defaults to ```false```", exampleStringValue="false")
+	public boolean profileForces = false;
+
 	@Tunable(description="Number of Iterations:", gravity=800.9, context="both", longDescription="Number of Iterations, in numeric value", exampleStringValue="100")
 	public int numIterations = 100;
 
+	@Tunable(description="Stop when converged:", gravity=800.91, context="both", longDescription="Stop the layout before the number of iterations once the nodes stopped moving; boolean values only, ```true``` or ```false```; defaults to ```false```", exampleStringValue="false")
+	public boolean stopOnConvergence = false;
+
+	@Tunable(description="Convergence tolerance:", gravity=800.92, dependsOn="stopOnConvergence=true", context="both", longDescription="Largest node displacement per iteration considered as converged, in numeric value", exampleStringValue="1.0")
+	public double convergenceTolerance = 1.0;
+
+	@Tunable(description="Converged iterations before stopping:", gravity=800.93, dependsOn="stopOnConvergence=true", context="both", longDescription="Number of consecutive converged iterations before stopping, in numeric value", exampleStringValue="10")
+	public int convergenceWindow = 10;
+
+	//@Tunable(description="Convergence kinetic energy:", context="both", longDescription="Largest average kinetic energy per node considered as converged, in numeric value", exampleStringValue="1e-4")
+	public double convergenceEnergy = 1e-4;
+
 	@Tunable(description="ANIMATE", gravity=900.02, context="both", longDescription="Apply animation to the layout; boolean values only", exampleStringValue="false")
 	public boolean useAnimation = false;
 
@@ -74,12 +118,29 @@ public class ForceDirectedLayoutContext implements TunableValidator {
 			errMsg.append("Spring length must be >= 0; current value = "+defaultSpringLength);
 		if (!isPositive(defaultNodeMass))
 			errMsg.append("Node mass must be > 0; current value = "+defaultNodeMass);
+		if (!isNonNegative(convergenceTolerance))
+			errMsg.append("Convergence tolerance must be >= 0; current value = "+convergenceTolerance);
+		if (!isPositive(convergenceWindow))
+			errMsg.append("Converged iterations must be > 0; current value = "+convergenceWindow);
 		} catch (IOException e) {}
 		return isPositive(numIterations) && isNonNegative(defaultSpringCoefficient)
 		       && isNonNegative(defaultSpringLength) && isPositive(defaultNodeMass)
+		       && isNonNegative(convergenceTolerance) && isPositive(convergenceWindow)
 			? ValidationState.OK : ValidationState.INVALID;
 	}
 
+	/**
+	 * Returns a copy of this context with the same parameter values, which can
+	 * be modified without affecting this context, as done by the {@link AutoLayout} trials.
+	 */
+	public ForceDirectedLayoutContext copy() {
+		try {
+			return (ForceDirectedLayoutContext) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	private static boolean isPositive(final int n) {
 		return n > 0;
 	}
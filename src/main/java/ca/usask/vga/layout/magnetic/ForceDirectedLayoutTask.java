@@ -1,16 +1,23 @@
 package ca.usask.vga.layout.magnetic;
 
+import ca.usask.vga.layout.magnetic.util.ConvergenceMonitor;
+import ca.usask.vga.layout.magnetic.util.PhaseEvents;
+import ca.usask.vga.layout.magnetic.util.TimestepController;
 import org.cytoscape.model.CyNode;
 import org.cytoscape.view.layout.*;
 import org.cytoscape.view.model.CyNetworkView;
 import org.cytoscape.view.model.View;
+import org.cytoscape.work.TaskMonitor;
 import org.cytoscape.work.undo.UndoSupport;
+import prefuse.util.force.ArrayForceSimulator;
 import prefuse.util.force.ForceItem;
+import prefuse.util.force.ForceProfile;
 import prefuse.util.force.ForceSimulator;
 import prefuse.util.force.Spring;
 import prefuse.util.force.StateMonitor;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /* Adapted from:
  * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
@@ -40,7 +47,6 @@ import java.util.*;
  * @see <a href="http://prefuse.org">Prefuse web site</a>
  */
 public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTask {
-	// In the future it would be good to allow for parallel computation here
 
 	protected static final int ANIMATION_FRAME_PERIOD = 10;
 
@@ -49,6 +55,16 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 	protected final ForceDirectedLayoutContext context;
 	protected final StateMonitor monitor;
 
+	// convergence of the partitions laid out by the current doLayout call
+	private int partitionCount, convergedPartitions;
+	private String lastStopReason;
+
+	// time spent by every force in the partitions laid out by the current doLayout call, if enabled
+	private ForceProfile forceProfile;
+
+	// node locations computed in parallel before the partitions are laid out, by node SUID
+	private Map<Long, float[]> precomputed;
+
 	/**
 	 * Creates a new ForceDirectedLayout object.
 	 */
@@ -77,16 +93,173 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 	protected void mapForceItem(LayoutNode ln, ForceItem fitem) {}
 	protected void mapSpring(LayoutEdge le, Spring spring) {}
 	protected void clearMaps() {}
+	protected void finishMaps(ForceSimulator m_fsim) {}
+
+	protected ForceSimulator newForceSimulator() {
+		if (context.useArrayBackend)
+			return new ArrayForceSimulator(integrator.getNewArrayIntegrator(monitor), monitor);
+		return new ForceSimulator(integrator.getNewIntegrator(monitor), monitor);
+	}
+
+	/**
+	 * Indicates if the partitions can be simulated in parallel with the current settings.
+	 * The simulation of a partition must then not depend on the other partitions.
+	 */
+	protected boolean canLayOutInParallel() {
+		return true;
+	}
+
+	/**
+	 * Called on the task thread before the partitions are simulated in parallel,
+	 * to prepare any state shared by the partitions.
+	 */
+	protected void prepareParallelLayout() {}
+
+	/**
+	 * Returns a key identifying the partition containing the given nodes,
+	 * which stays the same when the network is partitioned again.
+	 */
+	protected static long getPartitionKey(LayoutPartition part) {
+		long key = Long.MAX_VALUE;
+		for (LayoutNode ln : part.getNodeList())
+			key = Math.min(key, ln.getNode().getSUID());
+		return key;
+	}
+
+	@Override
+	public void doLayout(TaskMonitor taskMonitor) {
+		this.taskMonitor = taskMonitor;
+		partitionCount = 0;
+		convergedPartitions = 0;
+		lastStopReason = null;
+		forceProfile = context.profileForces ? new ForceProfile() : null;
+
+		precomputed = null;
+		if (context.parallelPartitions && !singlePartition && !context.useAnimation && canLayOutInParallel())
+			precomputePartitions(taskMonitor);
+
+		// lays out the partitions one after another, using the precomputed locations
+		try {
+			super.doLayout(taskMonitor);
+		} finally {
+			precomputed = null;
+		}
+
+		if (forceProfile != null) {
+			taskMonitor.showMessage(TaskMonitor.Level.INFO, "Time per force:");
+			for (String line : forceProfile.getReport())
+				taskMonitor.showMessage(TaskMonitor.Level.INFO, line);
+		}
+
+		if (!context.stopOnConvergence || lastStopReason == null)
+			return;
+
+		if (partitionCount == 1)
+			taskMonitor.showMessage(TaskMonitor.Level.INFO, lastStopReason);
+		else
+			taskMonitor.showMessage(TaskMonitor.Level.INFO, convergedPartitions + " of " + partitionCount +
+					" partitions converged before " + context.numIterations + " iterations");
+	}
+
+	/**
+	 * Simulates the partitions of the network in parallel, without updating the view.
+	 * The resulting locations are then applied by {@link #layoutPartition(LayoutPartition)}.
+	 * A partition that could not be simulated is laid out again sequentially.
+	 */
+	private void precomputePartitions(TaskMonitor taskMonitor) {
+		List<LayoutPartition> partitions = new ArrayList<>();
+		for (LayoutPartition part : PartitionUtil.partition(networkView, nodesToLayOut, edgeWeighter)) {
+			if (part.nodeCount() > 1)
+				partitions.add(part);
+		}
+
+		if (partitions.size() < 2)
+			return;
+
+		// largest partitions first, so that they do not end up running alone
+		partitions.sort(Comparator.comparingInt(LayoutPartition::nodeCount).reversed());
+
+		taskMonitor.setStatusMessage("Laying out " + partitions.size() + " partitions in parallel");
+		prepareParallelLayout();
+		precomputed = new ConcurrentHashMap<>();
+
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), partitions.size());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (LayoutPartition part : partitions)
+				futures.add(executor.submit(() -> simulatePartition(part, false)));
+
+			// the progress is reported from this thread, the workers do not touch the task monitor
+			int done = 0;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+				taskMonitor.setProgress((double) ++done / partitions.size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
 	@Override
 	public void layoutPartition(LayoutPartition part) {
+		if (precomputed != null && applyPrecomputed(part))
+			return;
+
+		simulatePartition(part, true);
+	}
+
+	/**
+	 * Moves the nodes of the partition to their precomputed locations.
+	 * @return false if the partition was not precomputed
+	 */
+	private boolean applyPrecomputed(LayoutPartition part) {
+		for (LayoutNode ln : part.getNodeList()) {
+			if (!precomputed.containsKey(ln.getNode().getSUID()))
+				return false;
+		}
+
+		// update positions
+		part.resetNodes(); // reset the nodes so we get the new average location
+
+		for (LayoutNode ln : part.getNodeList()) {
+			if (cancelled)
+				return true;
+
+			if (!ln.isLocked()) {
+				float[] location = precomputed.get(ln.getNode().getSUID());
+				ln.setX(location[0]);
+				ln.setY(location[1]);
+				part.moveNodeToLocation(ln);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Runs the force simulation of a partition and moves its nodes to their new locations.
+	 * @param updateView if false, the view and the task monitor are not used, and the
+	 *  new locations are stored for {@link #layoutPartition(LayoutPartition)} instead,
+	 *  so the method can be called from several threads.
+	 */
+	protected void simulatePartition(LayoutPartition part, boolean updateView) {
 
 		clearMaps();
 
 		// Calculate our edge weights
 		part.calculateEdgeWeights();
 
-		ForceSimulator m_fsim = new ForceSimulator(integrator.getNewIntegrator(monitor), monitor);
+		ForceSimulator m_fsim = newForceSimulator();
+		if (forceProfile != null)
+			m_fsim.setProfile(new ForceProfile());
 		addSimulatorForces(m_fsim, part);
 
 		List<LayoutNode> nodeList = part.getNodeList();
@@ -136,16 +309,30 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 			mapSpring(e, s);
 		}
 
+		finishMaps(m_fsim);
+
 		// perform layout
-		long timestep = 1000L;
+		TimestepController timestep = new TimestepController(context.adaptiveTimestep, context.numIterations);
+
+		if (updateView)
+			taskMonitor.setProgress(0);
 
-		taskMonitor.setProgress(0);
+		ConvergenceMonitor convergence = null;
+		if (context.stopOnConvergence) {
+			convergence = new ConvergenceMonitor((float) context.convergenceTolerance,
+					(float) context.convergenceEnergy, context.convergenceWindow);
+			convergence.start(m_fsim);
+		}
+
+		PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.LAYOUT_PARTITION)
+				.setSize(m_fsim.getItemCount(), m_fsim.getSpringCount());
+		int iterations = 0;
 
 		for (int i = 0; i < context.numIterations; i++) {
 			if (cancelled)
 				return;
 
-			if (context.useAnimation && (i % ANIMATION_FRAME_PERIOD == 0 || context.numIterations <= ANIMATION_FRAME_PERIOD)) {
+			if (updateView && context.useAnimation && (i % ANIMATION_FRAME_PERIOD == 0 || context.numIterations <= ANIMATION_FRAME_PERIOD)) {
 				// update positions
 				part.resetNodes(); // reset the nodes so we get the new average location
 				part.offset(0, 0); // removes "dontMove" flag
@@ -164,11 +351,36 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 			}
 
 
-			timestep *= (1.0 - i / (double) context.numIterations);
-			long step = timestep + 50;
-			m_fsim.runSimulator(step);
+			m_fsim.runSimulator(timestep.nextTimestep(i));
+			timestep.update(m_fsim);
+			iterations++;
 			// setTaskStatus((int) (((double) i / (double) context.numIterations) * 90. + 5));
-			taskMonitor.setProgress((double) i / (double) context.numIterations);
+			if (updateView)
+				taskMonitor.setProgress((double) i / (double) context.numIterations);
+
+			if (convergence != null && convergence.update(m_fsim))
+				break;
+		}
+
+		phase.setCount(iterations);
+		if (convergence != null)
+			phase.setDetail(convergence.getStopReason());
+		phase.end();
+
+		if (convergence != null)
+			recordConvergence(convergence);
+		if (forceProfile != null)
+			forceProfile.add(m_fsim.getProfile());
+
+		if (!updateView) {
+			if (cancelled)
+				return;
+
+			Map<Long, float[]> locations = new HashMap<>();
+			for (LayoutNode ln : nodeList)
+				locations.put(ln.getNode().getSUID(), forceItems.get(ln).location.clone());
+			precomputed.putAll(locations);
+			return;
 		}
 
 		// update positions
@@ -187,6 +399,21 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 		}
 	}
 	
+	/**
+	 * Returns the time spent by every force and by the integrator in all the partitions
+	 * of the last layout, or null if {@link ForceDirectedLayoutContext#profileForces} was disabled.
+	 */
+	public ForceProfile getForceProfile() {
+		return forceProfile;
+	}
+
+	private synchronized void recordConvergence(ConvergenceMonitor convergence) {
+		partitionCount++;
+		if (convergence.isConverged())
+			convergedPartitions++;
+		lastStopReason = convergence.getStopReason();
+	}
+
 	@Override
 	public void cancel() {
 		super.cancel();
@@ -201,6 +428,13 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 	 * a mass value of 1.0.
 	 */
 	protected float getMassValue(LayoutNode n) {
+		return getMassValue(n, context);
+	}
+
+	/**
+	 * Get the mass value associated with the given node, using the parameters of the given context.
+	 */
+	protected float getMassValue(LayoutNode n, ForceDirectedLayoutContext context) {
 		return (float)context.defaultNodeMass;
 	}
 
@@ -212,8 +446,21 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 	 * -1 means to ignore this method and use the global default.
 	*/
 	protected float getSpringLength(LayoutEdge e) {
-		double weight = e.getWeight();
-		
+		return getSpringLength(e, context);
+	}
+
+	/**
+	 * Get the spring length for the given edge, using the parameters of the given context.
+	 */
+	protected float getSpringLength(LayoutEdge e, ForceDirectedLayoutContext context) {
+		return getSpringLength(e.getWeight(), context);
+	}
+
+	/**
+	 * Get the spring length of an edge with the given weight, using the parameters of the given context.
+	 * Also used by the headless layout, which has no layout edges.
+	 */
+	public static float getSpringLength(double weight, ForceDirectedLayoutContext context) {
 		if (weight == 0.0)
 			return (float)(context.defaultSpringLength);
 
@@ -229,6 +476,13 @@ public abstract class ForceDirectedLayoutTask extends AbstractPartitionLayoutTas
 	 * -1 means to ignore this method and use the global default.
 	 */
 	protected float getSpringCoefficient(LayoutEdge e) {
+		return getSpringCoefficient(e, context);
+	}
+
+	/**
+	 * Get the spring coefficient for the given edge, using the parameters of the given context.
+	 */
+	protected float getSpringCoefficient(LayoutEdge e, ForceDirectedLayoutContext context) {
 		return (float)context.defaultSpringCoefficient;
 	}
 }
@@ -0,0 +1,74 @@
+package ca.usask.vga.layout.magnetic;
+
+import ca.usask.vga.layout.magnetic.force.*;
+import ca.usask.vga.layout.magnetic.util.ErrorCalculator;
+import ca.usask.vga.layout.magnetic.util.PoleClassifier;
+import ca.usask.vga.layout.magnetic.util.Vector;
+import prefuse.util.force.*;
+
+/**
+ * Registers the forces of the pole magnetic layout on a simulation, as toggled by the context.
+ * Used by the {@link PoleMagneticLayoutTask} inside Cytoscape, and by the headless layout runner,
+ * which has no layout partition; the center of the layout is then given directly.
+ */
+public class PoleMagneticForces {
+
+    /**
+     * Adds the forces of the given context to the simulation.
+     * @param center the center of the layout, used by the circle pin and the central gravity
+     * @return the error calculator of the simulation
+     */
+    public static ErrorCalculator addForces(ForceSimulator m_fsim, PoleMagneticLayoutContext context,
+                                            PoleClassifier poleClassifier, Vector center, StateMonitor monitor) {
+
+        // REGISTERING FORCES
+
+        // Default prefuse layout forces
+        NBodyForce repulsion = new NBodyForce((float) -context.repulsionCoefficient, NBodyForce.DEFAULT_DISTANCE, NBodyForce.DEFAULT_THETA, monitor);
+        repulsion.setParallel(context.parallelRepulsion);
+        repulsion.setRefit(context.refitRepulsion);
+        m_fsim.addForce(repulsion);  // Repulsion
+        m_fsim.addForce(new SpringForce());  // Spring Attraction (ideal dist)
+        m_fsim.addForce(new DragForce());  // Dampening
+
+        // Magnetic force
+        MagneticForce mf = null;
+        if (context.magnetEnabled) {
+            if (context.useMagneticPoles) {
+                // Using magnetic pole classification
+                mf = new MagneticForce(poleClassifier, (float) context.magneticFieldStrength,
+                        (float) context.magneticAlpha,  (float) context.magneticBeta);
+            } else {
+                // Simpler version without poles
+                mf = new MagneticForce(context.fieldType,  (float) context.magneticFieldStrength,
+                        (float) context.magneticAlpha,  (float) context.magneticBeta);
+            }
+            m_fsim.addForce(mf);
+        }
+        ErrorCalculator calc = new ErrorCalculator(m_fsim, mf);
+
+        // Pole pin force
+        if (context.pinPoles) {
+            PinForce pf = new PinForce(poleClassifier);
+            m_fsim.addForce(pf);
+            if (context.useCirclePin)
+                pf.setPinAroundCircle(center, (float) context.pinRadius);
+        }
+
+        // Pole gravity force
+        if (context.usePoleAttraction)
+            m_fsim.addForce(new PoleGravityForce(poleClassifier, (float) context.poleGravity));
+
+        // Central gravity force
+        if (context.useCentralGravity)
+            m_fsim.addForce(new GravityForce(center, (float) context.centralGravity));
+
+        // Hierarchy force
+        if (context.useHierarchyForce)
+            m_fsim.addForce(new HierarchyForce(poleClassifier, context.hierarchyType,
+                    (float) context.hierarchyForce, (float) context.ringRadius));
+
+        return calc;
+    }
+
+}
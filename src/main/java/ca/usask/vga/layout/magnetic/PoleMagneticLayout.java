@@ -28,8 +28,9 @@ public class PoleMagneticLayout extends AbstractLayoutAlgorithm {
     @Override
     public TaskIterator createTaskIterator(CyNetworkView networkView, Object context, Set<View<CyNode>> nodesToLayOut,
                                            String attrName) {
+        ForceDirectedLayoutContext layoutContext = (ForceDirectedLayoutContext) context;
         return new TaskIterator(new PoleMagneticLayoutTask(toString(), networkView, nodesToLayOut,
-                (ForceDirectedLayoutContext) context, ForceDirectedLayout.Integrators.RUNGEKUTTA, attrName, undoSupport, poleManager));
+                layoutContext, layoutContext.integrator, attrName, undoSupport, poleManager));
     }
 
     @Override
@@ -90,5 +90,14 @@ public class PoleMagneticLayoutContext extends SimpleMagneticLayoutContext {
             longDescription="Iterate over parameter combinations to find better initial parameters", exampleStringValue="false")
     public boolean useAutoLayout = false;
 
+    //@Tunable(description="Parallel auto layout trials:", context="both", longDescription="Run the auto layout parameter trials at the same time on all processor cores; boolean values only, ```true``` or ```false```; defaults to ```true```", exampleStringValue="true")
+    public boolean parallelAutoLayout = true;
+
+    //@Tunable(description="Auto layout search:", context="both", longDescription="Strategy used to choose the parameter combinations to try", exampleStringValue="Successive halving")
+    public AutoLayoutSearch.Strategy autoLayoutSearch = AutoLayoutSearch.Strategy.SUCCESSIVE_HALVING;
+
+    //@Tunable(description="Auto layout trials:", context="both", longDescription="Largest number of trial simulations run by auto layout, in numeric value", exampleStringValue="32")
+    public int autoLayoutBudget = 32;
+
 
 }
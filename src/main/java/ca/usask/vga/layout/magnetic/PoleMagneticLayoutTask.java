@@ -13,9 +13,9 @@ import org.cytoscape.work.swing.DialogTaskManager;
 import org.cytoscape.work.undo.UndoSupport;
 import prefuse.util.force.*;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -26,80 +26,72 @@ import java.util.Set;
 public class PoleMagneticLayoutTask extends ForceDirectedLayoutTask {
 
     private final PoleManager poleManager;
-    protected MapPoleClassifier poleClassifier;
-    private Map<LayoutPartition, ErrorCalculator> errorCalc;
+    // partitions can be simulated in parallel, each thread maps its own partition
+    private final ThreadLocal<MapPoleClassifier> poleMaps;
+    private final ThreadLocal<ArrayPoleClassifier> poleClassifier;
+    private Map<Long, ErrorCalculator> errorCalc;
 
     public PoleMagneticLayoutTask(String displayName, CyNetworkView networkView, Set<View<CyNode>> nodesToLayOut, ForceDirectedLayoutContext context, ForceDirectedLayout.Integrators integrator, String attrName, UndoSupport undo, PoleManager poleManager) {
         super(displayName, networkView, nodesToLayOut, context, integrator, attrName, undo);
         this.poleManager = poleManager;
-        poleClassifier = new MapPoleClassifier(networkView.getModel(), poleManager);
-        errorCalc = new HashMap<>();
+        poleMaps = ThreadLocal.withInitial(() -> new MapPoleClassifier(networkView.getModel(), poleManager));
+        poleClassifier = ThreadLocal.withInitial(() -> new ArrayPoleClassifier(poleMaps.get()));
+        errorCalc = new ConcurrentHashMap<>();
+    }
+
+    protected ArrayPoleClassifier getPoleClassifier() {
+        return poleClassifier.get();
     }
 
     @Override
     protected void mapForceItem(LayoutNode ln, ForceItem fitem) {
-        poleClassifier.mapNode(fitem, ln);
+        poleMaps.get().mapNode(fitem, ln);
     }
 
     @Override
     protected void mapSpring(LayoutEdge le, Spring spring) {
-        poleClassifier.mapEdge(spring, le);
+        poleMaps.get().mapEdge(spring, le);
     }
 
     @Override
     protected void clearMaps() {
-        poleClassifier = new MapPoleClassifier(networkView.getModel(), poleManager);
+        MapPoleClassifier maps = new MapPoleClassifier(networkView.getModel(), poleManager);
+        poleMaps.set(maps);
+        poleClassifier.set(new ArrayPoleClassifier(maps));
     }
 
     @Override
-    protected void addSimulatorForces(ForceSimulator m_fsim, LayoutPartition part) {
-
-        // REGISTERING FORCES
-
-        // Default prefuse layout forces
-        m_fsim.addForce(new NBodyForce((float) -context.repulsionCoefficient, NBodyForce.DEFAULT_DISTANCE, NBodyForce.DEFAULT_THETA, monitor));  // Repulsion
-        m_fsim.addForce(new SpringForce());  // Spring Attraction (ideal dist)
-        m_fsim.addForce(new DragForce());  // Dampening
-
-        PoleMagneticLayoutContext context = (PoleMagneticLayoutContext) this.context;
-
-        // Magnetic force
-        MagneticForce mf = null;
-        if (context.magnetEnabled) {
-            if (context.useMagneticPoles) {
-                // Using magnetic pole classification
-                mf = new MagneticForce(poleClassifier, (float) context.magneticFieldStrength,
-                        (float) context.magneticAlpha,  (float) context.magneticBeta);
-            } else {
-                // Simpler version without poles
-                mf = new MagneticForce(context.fieldType,  (float) context.magneticFieldStrength,
-                        (float) context.magneticAlpha,  (float) context.magneticBeta);
-            }
-            m_fsim.addForce(mf);
-        }
-        errorCalc.put(part, new ErrorCalculator(m_fsim, mf));
-
-        // Pole pin force
-        if (context.pinPoles) {
-            PinForce pf = new PinForce(poleClassifier);
-            m_fsim.addForce(pf);
-            if (context.useCirclePin)
-                pf.setPinAroundCircle(part, (float) context.pinRadius);
-        }
+    protected void finishMaps(ForceSimulator m_fsim) {
+        // The forces only read the classification from arrays during the simulation
+        getPoleClassifier().snapshot(m_fsim);
+    }
 
-        // Pole gravity force
-        if (context.usePoleAttraction)
-            m_fsim.addForce(new PoleGravityForce(poleClassifier, (float) context.poleGravity));
+    @Override
+    protected boolean canLayOutInParallel() {
+        return !((PoleMagneticLayoutContext) context).useAutoLayout;
+    }
 
-        // Central gravity force
-        if (context.useCentralGravity)
-            m_fsim.addForce(new GravityForce(part.getAverageLocation(), (float) context.centralGravity));
+    @Override
+    protected void prepareParallelLayout() {
+        // Fill the pole distance caches and the closest pole table before they are read from several threads
+        poleManager.prepare(networkView.getModel());
+    }
 
-        // Hierarchy force
-        if (context.useHierarchyForce)
-            m_fsim.addForce(new HierarchyForce(poleClassifier, context.hierarchyType,
-                    (float) context.hierarchyForce, (float) context.ringRadius));
+    @Override
+    protected void addSimulatorForces(ForceSimulator m_fsim, LayoutPartition part) {
+        errorCalc.put(getPartitionKey(part), addSimulatorForces(m_fsim, part,
+                (PoleMagneticLayoutContext) context, getPoleClassifier()));
+    }
 
+    /**
+     * Adds the forces of the given context to the simulation, so that {@link AutoLayout}
+     * trials can each use their own parameters and classifier.
+     * @return the error calculator of the simulation
+     */
+    protected ErrorCalculator addSimulatorForces(ForceSimulator m_fsim, LayoutPartition part,
+                                                 PoleMagneticLayoutContext context, PoleClassifier poleClassifier) {
+        return PoleMagneticForces.addForces(m_fsim, context, poleClassifier,
+                Vector.convert(part.getAverageLocation()), monitor);
     }
 
     @Override
@@ -109,15 +101,15 @@ public class PoleMagneticLayoutTask extends ForceDirectedLayoutTask {
             new AutoLayout(this, part, monitor).run(taskMonitor);
 
         super.layoutPartition(part);
-        if (part.edgeCount() > 1 && errorCalc.get(part) != null) {
-            var calc = errorCalc.get(part);
+        var calc = getErrorCalculator(part);
+        if (part.edgeCount() > 1 && calc != null) {
             calc.recalculate();
             calc.displayResults(taskMonitor);
         }
     }
 
     public ErrorCalculator getErrorCalculator(LayoutPartition part) {
-        return errorCalc.get(part);
+        return errorCalc.get(getPartitionKey(part));
     }
 
 }
@@ -25,8 +25,9 @@ public class SimpleMagneticLayout extends AbstractLayoutAlgorithm {
     @Override
     public TaskIterator createTaskIterator(CyNetworkView networkView, Object context, Set<View<CyNode>> nodesToLayOut,
                                            String attrName) {
+        ForceDirectedLayoutContext layoutContext = (ForceDirectedLayoutContext) context;
         return new TaskIterator(new SimpleMagneticLayoutTask(toString(), networkView, nodesToLayOut,
-                (ForceDirectedLayoutContext) context, ForceDirectedLayout.Integrators.RUNGEKUTTA, attrName, undoSupport));
+                layoutContext, layoutContext.integrator, attrName, undoSupport));
     }
 
     @Override
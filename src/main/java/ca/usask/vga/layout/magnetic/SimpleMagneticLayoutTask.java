@@ -12,9 +12,9 @@ import prefuse.util.force.ForceSimulator;
 import prefuse.util.force.NBodyForce;
 import prefuse.util.force.SpringForce;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -22,11 +22,11 @@ import java.util.Set;
  */
 public class SimpleMagneticLayoutTask extends ForceDirectedLayoutTask {
 
-    private Map<LayoutPartition, ErrorCalculator> errorCalc;
+    private Map<Long, ErrorCalculator> errorCalc;
 
     public SimpleMagneticLayoutTask(String displayName, CyNetworkView networkView, Set<View<CyNode>> nodesToLayOut, ForceDirectedLayoutContext context, ForceDirectedLayout.Integrators integrator, String attrName, UndoSupport undo) {
         super(displayName, networkView, nodesToLayOut, context, integrator, attrName, undo);
-        errorCalc = new HashMap<>();
+        errorCalc = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -35,7 +35,10 @@ public class SimpleMagneticLayoutTask extends ForceDirectedLayoutTask {
         // REGISTERING FORCES
 
         // Default prefuse layout forces
-        m_fsim.addForce(new NBodyForce((float) -context.repulsionCoefficient, NBodyForce.DEFAULT_DISTANCE, NBodyForce.DEFAULT_THETA, monitor));  // Repulsion
+        NBodyForce repulsion = new NBodyForce((float) -context.repulsionCoefficient, NBodyForce.DEFAULT_DISTANCE, NBodyForce.DEFAULT_THETA, monitor);
+        repulsion.setParallel(context.parallelRepulsion);
+        repulsion.setRefit(context.refitRepulsion);
+        m_fsim.addForce(repulsion);  // Repulsion
         m_fsim.addForce(new SpringForce());  // Attraction (ideal dist)
         m_fsim.addForce(new DragForce());  // Dampening
 
@@ -46,7 +49,7 @@ public class SimpleMagneticLayoutTask extends ForceDirectedLayoutTask {
             MagneticForce mf = new MagneticForce(context.fieldType,  (float) context.magneticFieldStrength,
                     (float) context.magneticAlpha,  (float) context.magneticBeta);
             m_fsim.addForce(mf);
-            errorCalc.put(part, new ErrorCalculator(m_fsim, mf));
+            errorCalc.put(getPartitionKey(part), new ErrorCalculator(m_fsim, mf));
         }
 
     }
@@ -54,15 +57,15 @@ public class SimpleMagneticLayoutTask extends ForceDirectedLayoutTask {
     @Override
     public void layoutPartition(LayoutPartition part) {
         super.layoutPartition(part);
-        if (part.edgeCount() > 1 && errorCalc.get(part) != null) {
-            var calc = errorCalc.get(part);
+        var calc = getErrorCalculator(part);
+        if (part.edgeCount() > 1 && calc != null) {
             calc.recalculate();
             calc.displayResults(taskMonitor);
         }
     }
 
     public ErrorCalculator getErrorCalculator(LayoutPartition part) {
-        return errorCalc.get(part);
+        return errorCalc.get(getPartitionKey(part));
     }
 
 }
@@ -84,9 +84,21 @@ public class SoftwareImport {
      * @param onSuccess The function to call when the import is successful.
      */
     public void loadFromSrcFolder(String path, String originalSource, Consumer<String> onSuccess) {
+        loadFromSrcFolder(path, originalSource, false, onSuccess);
+    }
+
+    /**
+     * Uses the path to a folder containing Java source code to import the source code.
+     * If the import is successful, the path of the folder is returned via onSuccess.
+     * @param path The path to the folder containing the local files of the source code.
+     * @param originalSource The path to the original source code, may be a GitHub link.
+     * @param fullImport Whether to parse every file again, instead of only the files changed since the last import.
+     * @param onSuccess The function to call when the import is successful.
+     */
+    public void loadFromSrcFolder(String path, String originalSource, boolean fullImport, Consumer<String> onSuccess) {
         System.out.println("Importing Java source code from: " + path);
         if (path.equals("")) return;
-        dtm.execute(new TaskIterator(new JavaReader.ReaderTask(path, readerAccess, rt -> {
+        var task = new JavaReader.ReaderTask(path, readerAccess, rt -> {
             if (originalSource.startsWith("http")) {
                 String remotePath = originalSource;
                 if (!remotePath.endsWith("/")) remotePath += "/";
@@ -97,7 +109,9 @@ public class SoftwareImport {
             }
             rt.loadIntoView(nm, vm);
             onSuccess.accept(path);
-        })));
+        });
+        task.fullImport = fullImport;
+        dtm.execute(new TaskIterator(task));
     }
 
     /**
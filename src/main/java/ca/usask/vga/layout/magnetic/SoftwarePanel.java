@@ -184,9 +184,15 @@ public class SoftwarePanel extends JPanel implements CytoPanelComponent2, Sessio
         var bFolder = new TooltipButton("Load from Java SRC folder", "Imports all Java classes from the SRC folder",
                 e -> importS.loadFromSrcFolder(importS.chooseSrcFolderDialogue(null), this::onFileLoaded));
 
+        var bReimport = new TooltipButton("Reimport SRC folder", "Imports all Java classes from the SRC folder again, " +
+                "without the saved import of the files that did not change", e -> {
+            String path = importS.chooseSrcFolderDialogue(null);
+            importS.loadFromSrcFolder(path, path, true, this::onFileLoaded);
+        });
+
         panel.add(group(bFile, bFolder));
 
-        panel.add(group(/*new JLabel(bold("Data import")),*/ clearCache));
+        panel.add(group(/*new JLabel(bold("Data import")),*/ bReimport, clearCache));
 
         addExplanation(panel, "To load a graph, paste the GitHub link to a Java project, or open it locally " +
                 "from a JAR file or a Java SRC folder. " +
@@ -33,6 +33,38 @@ public enum FieldType {
         return function.getFieldAt(pos);
     }
 
+    /**
+     * Returns the x component of {@link #getFieldAt(Vector)} without creating vectors.
+     */
+    public float getFieldX(float x, float y) {
+        switch (this) {
+            case HORIZONTAL: return 1;
+            case VERTICAL: return 0;
+            case POLAR: return normalize(x, x, y);
+            case CONCENTRIC: return normalize(y, x, y);
+            default: return getFieldAt(new Vector(x, y)).x;
+        }
+    }
+
+    /**
+     * Returns the y component of {@link #getFieldAt(Vector)} without creating vectors.
+     */
+    public float getFieldY(float x, float y) {
+        switch (this) {
+            case HORIZONTAL: return 0;
+            case VERTICAL: return 1;
+            case POLAR: return normalize(y, x, y);
+            case CONCENTRIC: return -normalize(x, x, y);
+            default: return getFieldAt(new Vector(x, y)).y;
+        }
+    }
+
+    private static float normalize(float component, float x, float y) {
+        float magnitude = Vector.magnitude(x, y);
+        if (magnitude == 0) return 0;
+        return component / magnitude;
+    }
+
     public interface FieldFunction {
         Vector getFieldAt(Vector pos);
     }
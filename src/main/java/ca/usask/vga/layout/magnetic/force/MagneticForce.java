@@ -4,6 +4,9 @@ import ca.usask.vga.layout.magnetic.util.PoleClassifier;
 import ca.usask.vga.layout.magnetic.util.Vector;
 import prefuse.util.force.*;
 
+import static ca.usask.vga.layout.magnetic.util.Vector.angleCos;
+import static ca.usask.vga.layout.magnetic.util.Vector.angleSin;
+import static ca.usask.vga.layout.magnetic.util.Vector.magnitude;
 import static ca.usask.vga.layout.magnetic.util.Vector.powf;
 import static ca.usask.vga.layout.magnetic.util.Vector.sign;
 
@@ -70,6 +73,8 @@ public class MagneticForce extends AbstractForce {
 
     /**
      * Calculates the force vector acting on the items due to the magnetic force.
+     * The calculation is done on floats, without creating any vectors, since it runs
+     * for every edge on every evaluation of the forces.
      * @param s the Spring (Edge) for which to compute the force
      * @see prefuse.util.force.Force#getForce(prefuse.util.force.Spring)
      */
@@ -79,62 +84,88 @@ public class MagneticForce extends AbstractForce {
         ForceItem item1 = s.item1;
         ForceItem item2 = s.item2;
 
-        Vector pos_n = new Vector(item1.location[0], item1.location[1]);
-        Vector pos_t = new Vector(item2.location[0], item2.location[1]);
+        float x_n = item1.location[0], y_n = item1.location[1];
+        float x_t = item2.location[0], y_t = item2.location[1];
 
-        Vector disp = pos_n.displacement(pos_t);
-        float dist = disp.magnitude();
+        // Displacement from the source to the target
+        float disp_x = x_t - x_n, disp_y = y_t - y_n;
+        float dist = magnitude(disp_x, disp_y);
 
         if (dist == 0.0)
             // No force is applied
             return;
 
-        Vector field_direction;
-        Vector midpoint = getCenter(pos_n, pos_t);
+        // Midpoint of the edge
+        float mid_x = (x_n + x_t) * 0.5f, mid_y = (y_n + y_t) * 0.5f;
+
+        float field_x, field_y;
 
         if (!usePoles) {
-            field_direction = field_type.getFieldAt(midpoint);
+            field_x = field_type.getFieldX(mid_x, mid_y);
+            field_y = field_type.getFieldY(mid_x, mid_y);
         } else {
-            field_direction = getMultiPoleFieldFor(midpoint, s);
+            ForceItem closestPole = getFieldPole(s);
+            if (closestPole == null)
+                return; // No field without a single closest pole
+            field_x = closestPole.location[0] - mid_x;
+            field_y = closestPole.location[1] - mid_y;
+            if (classifier.isPoleOutwards(closestPole)) {
+                field_x = -field_x;
+                field_y = -field_y;
+            }
         }
 
-        int edge_dir = 1; // Edge direction is always the same since item2 is the target
-        field_direction = field_direction.times(edge_dir);
+        // Edge direction is always the same since item2 is the target
 
-        if (field_direction.magnitude() == 0.0)
+        if (magnitude(field_x, field_y) == 0.0)
             return; // Cannot compute the angle when zero
 
-        // CALCULATE FORCE
-        Vector force_on_n = magnetic_equation(field_direction, disp, field_strength, alpha, beta);
-
-        Vector force_on_t = force_on_n.times(-1);
+        // CALCULATE FORCE, perpendicular to the edge
+        float scale = magnetic_equation(field_x, field_y, disp_x, disp_y, field_strength, alpha, beta);
+        float force_x = disp_y * scale;
+        float force_y = -disp_x * scale;
 
-        item1.force[0] += force_on_n.x;
-        item1.force[1] += force_on_n.y;
-        item2.force[0] += force_on_t.x;
-        item2.force[1] += force_on_t.y;
+        item1.force[0] += force_x;
+        item1.force[1] += force_y;
+        item2.force[0] -= force_x;
+        item2.force[1] -= force_y;
     }
 
     /**
-     * Calculates the force vector acting on the nodes due to the magnetic force.
-     * @param m Magnetic field vector
-     * @param d Vector direction of the edge
+     * Calculates the magnitude of the force acting on the nodes due to the magnetic force,
+     * as a multiple of the edge direction rotated 90 degrees clockwise.
+     * @param m_x Magnetic field vector x
+     * @param m_y Magnetic field vector y
+     * @param d_x Direction of the edge x
+     * @param d_y Direction of the edge y
      * @param b Strength of the magnetic field
      * @param alpha Exponent of the distance term
      * @param beta Exponent of the angle term
-     * @return Vector representing the force on the node
+     * @return Factor of the rotated edge direction representing the force on the node
      */
-    private Vector magnetic_equation(Vector m, Vector d, float b, float alpha, float beta)
+    private float magnetic_equation(float m_x, float m_y, float d_x, float d_y, float b, float alpha, float beta)
     {
-        float dist = (float) Math.sqrt(d.magnitude());
-        Vector force_on_n;
+        float dist = (float) Math.sqrt(magnitude(d_x, d_y));
+        float cross = m_x * d_y - m_y * d_x;
         if (!bi_directional)
-            force_on_n = d.rotate90clockwise().times(-(b * powf(dist, alpha-1) *
-                    powf(m.angleCos(d), beta) * sign(m.cross(d))));
+            return -(b * powf(dist, alpha-1) * powf(angleCos(m_x, m_y, d_x, d_y), beta) * sign(cross));
         else
-            force_on_n = d.rotate90clockwise().times(-(b * powf(dist, alpha-1) *
-                    powf(Math.abs(m.angleSin(d)), beta) * sign(m.cross(d) * m.dot(d))));
-        return force_on_n;
+            return -(b * powf(dist, alpha-1) * powf(Math.abs(angleSin(m_x, m_y, d_x, d_y)), beta) *
+                    sign(cross * (m_x * d_x + m_y * d_y)));
+    }
+
+    /**
+     * Returns the pole whose field applies to the given edge, or null if the edge
+     * is not closest to exactly one pole.
+     */
+    private ForceItem getFieldPole(Spring edge) {
+        if (classifier == null)
+            return null;
+        if (!classifier.isClosestToOne(edge))
+            return null;
+        ForceItem closestPole = classifier.poleOf(edge);
+        assert closestPole != null;
+        return closestPole;
     }
 
     /**
@@ -183,21 +214,30 @@ public class MagneticForce extends AbstractForce {
         ForceItem item1 = s.item1;
         ForceItem item2 = s.item2;
 
-        Vector pos_n = new Vector(item1.location[0], item1.location[1]);
-        Vector pos_t = new Vector(item2.location[0], item2.location[1]);
+        float x_n = item1.location[0], y_n = item1.location[1];
+        float x_t = item2.location[0], y_t = item2.location[1];
 
-        Vector disp = pos_n.displacement(pos_t);
+        float disp_x = x_t - x_n, disp_y = y_t - y_n;
+        float mid_x = (x_n + x_t) * 0.5f, mid_y = (y_n + y_t) * 0.5f;
 
-        Vector field_direction;
-        Vector midpoint = getCenter(pos_n, pos_t);
+        float field_x = 0, field_y = 0;
 
         if (!usePoles) {
-            field_direction = field_type.getFieldAt(midpoint);
+            field_x = field_type.getFieldX(mid_x, mid_y);
+            field_y = field_type.getFieldY(mid_x, mid_y);
         } else {
-            field_direction = getMultiPoleFieldFor(midpoint, s);
+            ForceItem closestPole = getFieldPole(s);
+            if (closestPole != null) {
+                field_x = closestPole.location[0] - mid_x;
+                field_y = closestPole.location[1] - mid_y;
+                if (classifier.isPoleOutwards(closestPole)) {
+                    field_x = -field_x;
+                    field_y = -field_y;
+                }
+            }
         }
 
-        float angle = field_direction.angleCos(disp);
+        float angle = angleCos(field_x, field_y, disp_x, disp_y);
         return Math.abs(angle);
 
     }
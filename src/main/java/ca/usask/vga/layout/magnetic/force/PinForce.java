@@ -51,9 +51,13 @@ public class PinForce extends AbstractForce {
     }
 
     public void setPinAroundCircle(LayoutPartition part, float radius) {
+        setPinAroundCircle(Vector.convert(part.getAverageLocation()), radius);
+    }
+
+    public void setPinAroundCircle(Vector center, float radius) {
         shape_size = radius;
         circlePin = true;
-        shapeCenter = Vector.convert(part.getAverageLocation());
+        shapeCenter = center;
     }
 
     public void setPinAroundPolygon(LayoutPartition part, float side) {
@@ -0,0 +1,169 @@
+package ca.usask.vga.layout.magnetic.headless;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A directed graph read from a file, without Cytoscape. Nodes are indexed in the order they
+ * are first seen and known by their name. Supports edge lists, with the source and target names
+ * separated by spaces on every line, as written by the Java parser, and Pajek .NET files.
+ */
+public class HeadlessGraph {
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nodeIndex = new HashMap<>();
+    private final Map<Integer, float[]> locations = new HashMap<>();
+
+    private int[] edgeSource = new int[16], edgeTarget = new int[16];
+    private int edgeCount;
+
+    /**
+     * Reads a Pajek file if the name ends with .net, otherwise an edge list.
+     */
+    public static HeadlessGraph read(Path file) throws IOException {
+        if (file.getFileName().toString().toLowerCase().endsWith(".net"))
+            return readPajek(file, true);
+        return readEdgeList(file);
+    }
+
+    /**
+     * Reads a list of edges, one "source target" pair per line. Any other words on the line,
+     * such as the edge type, are ignored, as well as empty lines and lines starting with #.
+     */
+    public static HeadlessGraph readEdgeList(Path file) throws IOException {
+        HeadlessGraph graph = new HeadlessGraph();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] split = line.split("\\s+");
+                if (split.length < 2) continue;
+                graph.addEdge(graph.getOrAddNode(split[0]), graph.getOrAddNode(split[1]));
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Reads a Pajek .NET file the same way as the Pajek reader of the app. The vertices are named
+     * by their identifier, and keep the coordinates given in the file, mirrored vertically if requested.
+     */
+    public static HeadlessGraph readPajek(Path file, boolean mirrorVertically) throws IOException {
+        HeadlessGraph graph = new HeadlessGraph();
+
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            boolean readingVertices = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                if (line.startsWith("*")) {
+                    String[] splitLine = line.split("[* ]+");
+                    if (splitLine.length < 2) continue;
+                    String subject = splitLine[1].toLowerCase();
+                    if (subject.equals("vertices"))
+                        readingVertices = true;
+                    else if (subject.equals("arcs") || subject.equals("edges"))
+                        readingVertices = false;
+                    continue;
+                }
+                if (readingVertices) {
+                    // VERTEX MODE
+                    String[] firstSplit = line.trim().split(" +", 2);
+                    String identifier = firstSplit[0];
+                    String attributes = firstSplit.length > 1 ? firstSplit[1] : "";
+
+                    // The label is skipped, only the coordinates after it are kept
+                    String misc = "";
+                    if (attributes.matches(" *\"(.*?)\".*")) {
+                        // Double quotes string present
+                        String[] textSplit = attributes.trim().split("\"", 3);
+                        if (textSplit.length < 3) continue;
+                        misc = textSplit[2];
+                    } else {
+                        // Spaces separated
+                        String[] textSplit = attributes.trim().split(" +", 2);
+                        if (textSplit.length > 1)
+                            misc = textSplit[1];
+                    }
+
+                    int node = graph.getOrAddNode(identifier);
+
+                    String[] coordsSplit = misc.trim().split(" +", 3);
+                    if (coordsSplit.length >= 2 && !coordsSplit[0].equals("") && !coordsSplit[1].equals("")) {
+                        float x = Float.parseFloat(coordsSplit[0]);
+                        float y = Float.parseFloat(coordsSplit[1]) * (mirrorVertically ? -1 : 1);
+                        graph.setLocation(node, x, y);
+                    }
+                } else {
+                    // EDGE MODE
+                    String[] edgeAttrs = line.trim().split(" +");
+                    if (edgeAttrs.length < 2) continue;
+                    graph.addEdge(graph.getOrAddNode(edgeAttrs[0]), graph.getOrAddNode(edgeAttrs[1]));
+                }
+            }
+        }
+        return graph;
+    }
+
+    public int getOrAddNode(String name) {
+        Integer i = nodeIndex.get(name);
+        if (i != null) return i;
+        names.add(name);
+        nodeIndex.put(name, names.size() - 1);
+        return names.size() - 1;
+    }
+
+    public void addEdge(int source, int target) {
+        if (edgeCount == edgeSource.length) {
+            edgeSource = Arrays.copyOf(edgeSource, edgeCount * 2);
+            edgeTarget = Arrays.copyOf(edgeTarget, edgeCount * 2);
+        }
+        edgeSource[edgeCount] = source;
+        edgeTarget[edgeCount] = target;
+        edgeCount++;
+    }
+
+    public void setLocation(int node, float x, float y) {
+        locations.put(node, new float[] {x, y});
+    }
+
+    /**
+     * Returns the location given in the file, or null if there is none.
+     */
+    public float[] getLocation(int node) {
+        return locations.get(node);
+    }
+
+    public int getNodeCount() {
+        return names.size();
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public String getName(int node) {
+        return names.get(node);
+    }
+
+    /**
+     * Returns the index of the node with the given name, or -1 if there is none.
+     */
+    public int indexOf(String name) {
+        Integer i = nodeIndex.get(name);
+        return i == null ? -1 : i;
+    }
+
+    public int[] getEdgeSources() {
+        return Arrays.copyOf(edgeSource, edgeCount);
+    }
+
+    public int[] getEdgeTargets() {
+        return Arrays.copyOf(edgeTarget, edgeCount);
+    }
+
+}
@@ -0,0 +1,422 @@
+package ca.usask.vga.layout.magnetic.headless;
+
+import ca.usask.vga.layout.magnetic.ForceDirectedLayout;
+import ca.usask.vga.layout.magnetic.ForceDirectedLayoutTask;
+import ca.usask.vga.layout.magnetic.PoleMagneticForces;
+import ca.usask.vga.layout.magnetic.PoleMagneticLayoutContext;
+import ca.usask.vga.layout.magnetic.poles.PoleDistanceEngine;
+import ca.usask.vga.layout.magnetic.util.ArrayPoleClassifier;
+import ca.usask.vga.layout.magnetic.util.ConvergenceMonitor;
+import ca.usask.vga.layout.magnetic.util.IndexedPoleClassifier;
+import ca.usask.vga.layout.magnetic.util.TimestepController;
+import ca.usask.vga.layout.magnetic.util.Vector;
+import prefuse.util.force.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Runs the pole magnetic layout outside of Cytoscape, without Swing or OSGi, so that graphs can be
+ * laid out in batches on a server. Reads a graph and a list of poles, and writes the node coordinates.
+ * <p>
+ * Usage: <code>HeadlessLayoutRunner graph poles output.tsv [--setting=value ...]</code>
+ * <ul>
+ *     <li>The graph is an edge list, or a Pajek file if its name ends with .net, see {@link HeadlessGraph}.</li>
+ *     <li>The poles file has one node name per line, optionally followed by "in" or "out", inwards by default.</li>
+ *     <li>The output has one line per node, with its name, x and y separated by tabs.</li>
+ *     <li>Any public field of {@link PoleMagneticLayoutContext} can be set by name, for example
+ *     <code>--numIterations=200</code>, <code>--pinPoles=true</code> or <code>--integrator=VERLET</code>.
+ *     The seed of the initial positions is set with <code>--seed=1</code>.</li>
+ * </ul>
+ * As in Cytoscape, every connected component is simulated on its own, unless
+ * {@link PoleMagneticLayoutContext#singlePartition} is enabled, and the components are then placed
+ * next to each other. The edges have no weight attribute, so their spring length is derived
+ * from the default weight that Cytoscape gives them.
+ */
+public class HeadlessLayoutRunner {
+
+    /** The weight of the layout edges in Cytoscape, which does not use an edge weight column. */
+    private static final double EDGE_WEIGHT = 0.5;
+    /** The space Cytoscape leaves between the partitions. */
+    private static final double PARTITION_SPACING = 100;
+
+    private final PoleMagneticLayoutContext context;
+    private final StateMonitor monitor = new StateMonitor();
+
+    private long seed;
+
+    // convergence of the partitions of the last layout
+    private int iterationsRun, partitionCount, convergedPartitions;
+    private String lastStopReason;
+    private ForceProfile forceProfile;
+
+    public HeadlessLayoutRunner(PoleMagneticLayoutContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sets the seed of the random initial positions, used for the nodes without a location in the file.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the most iterations run by a partition of the last layout.
+     */
+    public int getIterationsRun() {
+        return iterationsRun;
+    }
+
+    /**
+     * Returns the reason the last layout stopped, if it was checked for convergence,
+     * or how many of its partitions converged.
+     */
+    public String getStopReason() {
+        if (lastStopReason == null)
+            return "iteration limit";
+        if (partitionCount == 1)
+            return lastStopReason;
+        return convergedPartitions + " of " + partitionCount + " partitions converged before "
+                + context.numIterations + " iterations";
+    }
+
+    /**
+     * Returns the time spent by every force in all the partitions of the last layout, or null if
+     * {@link PoleMagneticLayoutContext#profileForces} was disabled.
+     */
+    public ForceProfile getForceProfile() {
+        return forceProfile;
+    }
+
+    /**
+     * Lays out the given graph with the given poles.
+     * @param poles the indices of the pole nodes
+     * @param poleIsOutwards the direction of every pole, in the same order
+     * @return the x and y location of every node
+     */
+    public float[][] layout(HeadlessGraph graph, int[] poles, boolean[] poleIsOutwards) {
+        int n = graph.getNodeCount();
+        int[] edgeSource = graph.getEdgeSources(), edgeTarget = graph.getEdgeTargets();
+
+        forceProfile = context.profileForces ? new ForceProfile() : null;
+        iterationsRun = partitionCount = convergedPartitions = 0;
+        lastStopReason = null;
+
+        PoleDistanceEngine engine = new PoleDistanceEngine(n, edgeSource, edgeTarget);
+        IndexedPoleClassifier indexed = new IndexedPoleClassifier(engine, poles, poleIsOutwards, edgeSource, edgeTarget);
+
+        // initialize locations
+        Random random = new Random(seed);
+        float size = (float) (Math.sqrt(n) * context.defaultSpringLength);
+        float[][] locations = new float[n][];
+        for (int i = 0; i < n; i++) {
+            float[] location = graph.getLocation(i);
+            locations[i] = location != null ? location.clone()
+                    : new float[]{random.nextFloat() * size, random.nextFloat() * size};
+        }
+
+        List<int[]> partitions = new ArrayList<>();
+        List<List<Integer>> partitionEdges = new ArrayList<>();
+        partition(n, edgeSource, edgeTarget, partitions, partitionEdges);
+
+        // Place the partitions next to each other, as AbstractPartitionLayoutTask does in Cytoscape
+        double xStart = Double.MAX_VALUE, yStart = Double.MAX_VALUE;
+        for (float[] location : locations) {
+            xStart = Math.min(xStart, location[0]);
+            yStart = Math.min(yStart, location[1]);
+        }
+        double nextX = xStart, nextY = yStart, currentMaxY = 0;
+        double maxDimensions = Math.sqrt(n) * PARTITION_SPACING + xStart;
+
+        for (int p = 0; p < partitions.size(); p++) {
+            int[] nodes = partitions.get(p);
+            if (nodes.length > 1) {
+                layoutPartition(nodes, partitionEdges.get(p), edgeSource, edgeTarget, locations, indexed);
+                if (!context.singlePartition)
+                    offset(nodes, locations, nextX, nextY);
+            } else {
+                locations[nodes[0]][0] = (float) nextX;
+                locations[nodes[0]][1] = (float) nextY;
+            }
+
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int node : nodes) {
+                maxX = Math.max(maxX, locations[node][0]);
+                maxY = Math.max(maxY, locations[node][1]);
+            }
+            currentMaxY = Math.max(currentMaxY, maxY);
+            if (maxX > maxDimensions) {
+                nextX = xStart;
+                nextY = currentMaxY + PARTITION_SPACING;
+            } else {
+                nextX = maxX + PARTITION_SPACING;
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Splits the graph into its connected components, largest first, like the PartitionUtil of Cytoscape,
+     * or into a single partition if {@link PoleMagneticLayoutContext#singlePartition} is enabled.
+     * @param partitions receives the nodes of every partition
+     * @param partitionEdges receives the edges of every partition
+     */
+    private void partition(int n, int[] edgeSource, int[] edgeTarget,
+                           List<int[]> partitions, List<List<Integer>> partitionEdges) {
+        int[] component = new int[n];
+        for (int i = 0; i < n; i++)
+            component[i] = context.singlePartition ? 0 : i;
+
+        if (!context.singlePartition) {
+            for (int e = 0; e < edgeSource.length; e++) {
+                int a = findRoot(component, edgeSource[e]), b = findRoot(component, edgeTarget[e]);
+                component[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        // Components in the order of their first node, then sorted by size
+        Map<Integer, List<Integer>> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++)
+            nodes.computeIfAbsent(findRoot(component, i), k -> new ArrayList<>()).add(i);
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+        for (int e = 0; e < edgeSource.length; e++)
+            edges.computeIfAbsent(findRoot(component, edgeSource[e]), k -> new ArrayList<>()).add(e);
+
+        List<Integer> roots = new ArrayList<>(nodes.keySet());
+        roots.sort(Comparator.comparingInt((Integer root) -> nodes.get(root).size()).reversed());
+        for (int root : roots) {
+            partitions.add(nodes.get(root).stream().mapToInt(Integer::intValue).toArray());
+            partitionEdges.add(edges.getOrDefault(root, Collections.emptyList()));
+        }
+    }
+
+    private static int findRoot(int[] component, int node) {
+        while (component[node] != node) {
+            component[node] = component[component[node]];
+            node = component[node];
+        }
+        return node;
+    }
+
+    /**
+     * Runs the force simulation of a partition, as ForceDirectedLayoutTask does for a layout partition,
+     * and stores the new locations of its nodes.
+     */
+    private void layoutPartition(int[] nodes, List<Integer> edges, int[] edgeSource, int[] edgeTarget,
+                                 float[][] locations, IndexedPoleClassifier indexed) {
+        ForceDirectedLayout.Integrators integrator = context.integrator;
+        ForceSimulator m_fsim;
+        if (context.useArrayBackend)
+            m_fsim = new ArrayForceSimulator(integrator.getNewArrayIntegrator(monitor), monitor);
+        else
+            m_fsim = new ForceSimulator(integrator.getNewIntegrator(monitor), monitor);
+        if (forceProfile != null)
+            m_fsim.setProfile(new ForceProfile());
+
+        indexed.clearMaps();
+        ArrayPoleClassifier classifier = new ArrayPoleClassifier(indexed);
+
+        // initialize nodes
+        Map<Integer, ForceItem> items = new HashMap<>();
+        float centerX = 0, centerY = 0;
+        for (int node : nodes) {
+            ForceItem fitem = new ForceItem();
+            fitem.mass = (float) context.defaultNodeMass;
+            fitem.location[0] = locations[node][0];
+            fitem.location[1] = locations[node][1];
+            centerX += fitem.location[0] / nodes.length;
+            centerY += fitem.location[1] / nodes.length;
+            m_fsim.addItem(fitem);
+            indexed.mapNode(fitem, node);
+            items.put(node, fitem);
+        }
+
+        // initialize edges
+        float springLength = ForceDirectedLayoutTask.getSpringLength(EDGE_WEIGHT, context);
+        for (int e : edges) {
+            Spring s = m_fsim.addSpring(items.get(edgeSource[e]), items.get(edgeTarget[e]),
+                    (float) context.defaultSpringCoefficient, springLength);
+            indexed.mapEdge(s, e);
+        }
+
+        PoleMagneticForces.addForces(m_fsim, context, classifier, new Vector(centerX, centerY), monitor);
+        classifier.snapshot(m_fsim);
+
+        // perform layout
+        TimestepController timestep = new TimestepController(context.adaptiveTimestep, context.numIterations);
+
+        ConvergenceMonitor convergence = null;
+        if (context.stopOnConvergence) {
+            convergence = new ConvergenceMonitor((float) context.convergenceTolerance,
+                    (float) context.convergenceEnergy, context.convergenceWindow);
+            convergence.start(m_fsim);
+        }
+
+        int iterations = 0;
+        for (int i = 0; i < context.numIterations; i++) {
+            m_fsim.runSimulator(timestep.nextTimestep(i));
+            timestep.update(m_fsim);
+            iterations++;
+
+            if (convergence != null && convergence.update(m_fsim))
+                break;
+        }
+        iterationsRun = Math.max(iterationsRun, iterations);
+
+        partitionCount++;
+        if (convergence != null) {
+            if (convergence.isConverged())
+                convergedPartitions++;
+            lastStopReason = convergence.getStopReason();
+        }
+        if (forceProfile != null)
+            forceProfile.add(m_fsim.getProfile());
+
+        for (int node : nodes)
+            locations[node] = items.get(node).location.clone();
+    }
+
+    /**
+     * Moves the given nodes so that the top left corner of their bounds is at the given location,
+     * like LayoutPartition.offset.
+     */
+    private static void offset(int[] nodes, float[][] locations, double x, double y) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        for (int node : nodes) {
+            minX = Math.min(minX, locations[node][0]);
+            minY = Math.min(minY, locations[node][1]);
+        }
+        for (int node : nodes) {
+            locations[node][0] += (float) x - minX;
+            locations[node][1] += (float) y - minY;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> files = new ArrayList<>();
+        PoleMagneticLayoutContext context = new PoleMagneticLayoutContext();
+        HeadlessLayoutRunner runner = new HeadlessLayoutRunner(context);
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                files.add(arg);
+                continue;
+            }
+            String[] option = arg.substring(2).split("=", 2);
+            if (option.length < 2)
+                exitWithUsage("Missing value for " + arg);
+
+            try {
+                if (option[0].equals("seed"))
+                    runner.setSeed(Long.parseLong(option[1]));
+                else
+                    setSetting(context, option[0], option[1]);
+            } catch (IllegalArgumentException e) {
+                exitWithUsage("Invalid option " + arg + ": " + e.getMessage());
+            }
+        }
+        if (files.size() != 3)
+            exitWithUsage("Expected a graph, a poles file and an output file");
+
+        long start = System.currentTimeMillis();
+        HeadlessGraph graph = HeadlessGraph.read(Paths.get(files.get(0)));
+
+        List<Integer> poles = new ArrayList<>();
+        List<Boolean> directions = new ArrayList<>();
+        readPoles(Paths.get(files.get(1)), graph, poles, directions);
+        int[] poleArray = new int[poles.size()];
+        boolean[] directionArray = new boolean[poles.size()];
+        for (int p = 0; p < poleArray.length; p++) {
+            poleArray[p] = poles.get(p);
+            directionArray[p] = directions.get(p);
+        }
+
+        float[][] locations = runner.layout(graph, poleArray, directionArray);
+        writeLocations(Paths.get(files.get(2)), graph, locations);
+
+        System.err.println("Laid out " + graph.getNodeCount() + " nodes, " + graph.getEdgeCount() + " edges and "
+                + poleArray.length + " poles in " + runner.getIterationsRun() + " iterations ("
+                + runner.getStopReason() + "), " + (System.currentTimeMillis() - start) + " ms");
+        if (runner.getForceProfile() != null)
+            for (String line : runner.getForceProfile().getReport())
+                System.err.println(line);
+    }
+
+    private static void exitWithUsage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: HeadlessLayoutRunner graph poles output.tsv [--setting=value ...]");
+        System.exit(1);
+    }
+
+    /**
+     * Sets the public field of the context with the given name, converting the value to its type.
+     */
+    protected static void setSetting(PoleMagneticLayoutContext context, String name, String value) {
+        Field field;
+        try {
+            field = context.getClass().getField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("unknown setting");
+        }
+        if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers()))
+            throw new IllegalArgumentException("not a setting");
+
+        Class<?> type = field.getType();
+        Object converted;
+        if (type == double.class) converted = Double.parseDouble(value);
+        else if (type == int.class) converted = Integer.parseInt(value);
+        else if (type == boolean.class) converted = Boolean.parseBoolean(value);
+        else if (type.isEnum()) converted = enumValue(type, value);
+        else throw new IllegalArgumentException("unsupported type " + type.getSimpleName());
+
+        try {
+            field.set(context, converted);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("not a setting");
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> type, String value) {
+        return Enum.valueOf((Class<? extends Enum>) type, value.toUpperCase());
+    }
+
+    /**
+     * Reads the poles file, skipping the names that are not in the graph.
+     */
+    protected static void readPoles(Path file, HeadlessGraph graph, List<Integer> poles, List<Boolean> isOutwards)
+            throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] split = line.split("\\s+");
+                int node = graph.indexOf(split[0]);
+                if (node < 0) {
+                    System.err.println("Warning: pole " + split[0] + " is not in the graph");
+                    continue;
+                }
+                if (poles.contains(node)) continue;
+                poles.add(node);
+                isOutwards.add(split.length > 1 && split[1].equalsIgnoreCase("out"));
+            }
+        }
+    }
+
+    protected static void writeLocations(Path file, HeadlessGraph graph, float[][] locations) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (int i = 0; i < locations.length; i++)
+                writer.println(graph.getName(i) + "\t" + locations[i][0] + "\t" + locations[i][1]);
+        }
+    }
+
+}
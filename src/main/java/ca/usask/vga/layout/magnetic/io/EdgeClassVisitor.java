@@ -1,11 +1,14 @@
 package ca.usask.vga.layout.magnetic.io;
 
+import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.nodeTypes.NodeWithType;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
 import com.github.javaparser.ast.visitor.GenericListVisitorAdapter;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.*;
@@ -16,9 +19,14 @@ import java.io.IOException;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Java source code parser that goes through every class definition in the
@@ -27,12 +35,15 @@ import java.util.regex.Pattern;
 public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<String, String>> {
 
     private String currentClassName;
+    private final TypeResolutionCache typeCache;
+    private final Set<String> unresolvedNames = new HashSet<>();
 
     private String USES = "USES", CALL = "CALL", CREATION = "CREATION", DECLARATION = "DECLARATION",
             RETURN = "RETURN", PARAMETER = "PARAMETER", EXTENDS = "EXTENDS", IMPLEMENTS = "IMPLEMENTS",
             FIELD = "FIELD", INSIDEOF = "INSIDEOF";
 
     private static final Pattern INNER_CLASS = Pattern.compile("\\.[A-Z][A-Za-z0-9]*(?=\\.[A-Z0-9])");
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
 
     /**
      * A way to get around the fact that JavaParser doesn't handle inner classes
@@ -63,35 +74,191 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
     /**
      * Visit all classes in the given compilation units and returns a set of both nodes and edges.
      * Must visit them twice for better class definition resolution.
+     * The compilation units are visited in parallel, and every thread resolves the types with its own
+     * symbol solver, because the symbol solvers of JavaParser are not thread-safe. When two classes have
+     * the same simple name, the one of the last compilation unit is used to match the unresolved types,
+     * as in a sequential visit, so the result only depends on the order of the compilation units.
      * @param compilations the compilation units to visit
      * @param allInteractions whether to include all interaction names or remove redundant edges
      * @param hasBeenCancelled a function that returns true if the operation has been cancelled
      * @return two sets of nodes and edges
      */
     public static Set<String>[] visitAll(Collection<CompilationUnit> compilations, boolean allInteractions, Supplier<Boolean> hasBeenCancelled) {
-        Set<String> nodes = new HashSet<>();
-        Map<String, String> classDefinitions = new HashMap<>() {
-            @Override
-            public String put(String key, String value) {
-                nodes.add(value);
-                return super.put(key, value);
+        return visitAll(compilations, allInteractions, new TypeResolutionCache(), hasBeenCancelled);
+    }
+
+    /**
+     * Visit all classes in the given compilation units and returns a set of both nodes and edges,
+     * see {@link #visitAll(Collection, boolean, Supplier)}.
+     * @param typeCache the resolved types, whose statistics can be shown once the import is done
+     */
+    public static Set<String>[] visitAll(Collection<CompilationUnit> compilations, boolean allInteractions,
+                                         TypeResolutionCache typeCache, Supplier<Boolean> hasBeenCancelled) {
+        List<CompilationUnit> units = new ArrayList<>(compilations);
+        try (ParallelVisit visit = new ParallelVisit(allInteractions, typeCache, hasBeenCancelled)) {
+            var definitions = visit.defineClasses(units);
+            if (definitions == null) {
+                System.out.println("\nCancelled by user."); return null;
+            }
+            Set<String> nodes = new HashSet<>();
+            for (var defined : definitions) {
+                visit.classDefinitions.putAll(defined);
+                nodes.addAll(defined.values());
             }
-        };
-        for (var cu : compilations) {
-            new EdgeClassVisitor(allInteractions).visit(cu, classDefinitions);
-            if (hasBeenCancelled.get()) {
+
+            var visited = visit.findEdges(units);
+            if (visited == null) {
                 System.out.println("\nCancelled by user."); return null;
             }
+            Set<String> edges = new HashSet<>();
+            visited.forEach(v -> edges.addAll(v.edges));
+            System.out.println("\nDone Java class import!");
+            return new Set[]{nodes, edges};
         }
-        Set<String> edges = new HashSet<>();
-        for (var cu : compilations) {
-            edges.addAll(new EdgeClassVisitor(allInteractions).visit(cu, classDefinitions));
-            if (hasBeenCancelled.get()) {
-                System.out.println("\nCancelled by user."); return null;
+    }
+
+    /**
+     * The two visits of the compilation units of a project, run in parallel on a ForkJoin pool.
+     * The first visit finds the classes defined in every compilation unit, which the caller adds to the
+     * class definitions in the order of the compilation units. The second visit uses them to match the
+     * types that cannot be resolved, and only reads them.
+     */
+    static class ParallelVisit implements AutoCloseable {
+
+        /** The qualified name of every class, by simple name. Must not change during the second visit. */
+        final Map<String, String> classDefinitions = new HashMap<>();
+
+        private final boolean allInteractions;
+        private final TypeResolutionCache typeCache;
+        private final Supplier<Boolean> hasBeenCancelled;
+        private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        // The symbol solver of every source root, for each thread
+        private final ThreadLocal<Map<Path, JavaSymbolSolver>> symbolSolvers = ThreadLocal.withInitial(HashMap::new);
+
+        ParallelVisit(boolean allInteractions, TypeResolutionCache typeCache, Supplier<Boolean> hasBeenCancelled) {
+            this.allInteractions = allInteractions;
+            this.typeCache = typeCache;
+            this.hasBeenCancelled = hasBeenCancelled;
+        }
+
+        /**
+         * Visits the compilation units for the first time, to find their classes.
+         * @return the qualified names of the classes of every compilation unit, by simple name,
+         * in the same order, or null if cancelled
+         */
+        List<Map<String, String>> defineClasses(List<CompilationUnit> compilations) {
+            return run(() -> compilations.parallelStream().map(cu -> {
+                Map<String, String> defined = new LinkedHashMap<>();
+                if (!hasBeenCancelled.get())
+                    visitInThread(cu, defined);
+                return defined;
+            }).collect(Collectors.toList()));
+        }
+
+        /**
+         * Visits the compilation units for the second time, once all the classes are defined.
+         * @return the edges and the type names that could not be resolved of every compilation unit,
+         * in the same order, or null if cancelled
+         */
+        List<VisitedUnit> findEdges(List<CompilationUnit> compilations) {
+            return run(() -> compilations.parallelStream().map(cu -> {
+                VisitedUnit visited = new VisitedUnit(cu);
+                if (!hasBeenCancelled.get()) {
+                    EdgeClassVisitor visitor = newVisitor(cu);
+                    visited.edges.addAll(visitor.visit(cu, new UnitDefinitions(classDefinitions)));
+                    visited.unresolvedNames.addAll(visitor.getUnresolvedNames());
+                }
+                return visited;
+            }).collect(Collectors.toList()));
+        }
+
+        /**
+         * Visit the compilation unit with a new visitor, resolving its types with the symbol solver of the current thread.
+         */
+        private List<String> visitInThread(CompilationUnit cu, Map<String, String> definitions) {
+            return newVisitor(cu).visit(cu, definitions);
+        }
+
+        /**
+         * Create a new visitor for the compilation unit, and set the symbol solver of the current thread on it.
+         */
+        private EdgeClassVisitor newVisitor(CompilationUnit cu) {
+            cu.getStorage().ifPresent(storage -> cu.setData(Node.SYMBOL_RESOLVER_KEY,
+                    symbolSolvers.get().computeIfAbsent(storage.getSourceRoot(), EdgeClassVisitor::createSymbolSolver)));
+            return new EdgeClassVisitor(allInteractions, typeCache);
+        }
+
+        /**
+         * Runs the task on the pool and waits for it.
+         * @return the result of the task, or null if it was cancelled or interrupted
+         */
+        private <T> T run(Callable<T> task) {
+            try {
+                T result = pool.submit(task).get();
+                return hasBeenCancelled.get() ? null : result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
             }
         }
-        System.out.println("\nDone Java class import!");
-        return new Set[]{nodes, edges};
+
+        @Override
+        public void close() {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The result of the second visit of one compilation unit: its edges, the names in the types it could
+     * not resolve, and the packages in which its simple names are searched, which are its own package and
+     * the packages it imports with a wildcard. A new class with one of these names or in one of these
+     * packages can change the edges of the compilation unit.
+     */
+    static class VisitedUnit {
+
+        final Set<String> edges = new HashSet<>();
+        final Set<String> unresolvedNames = new HashSet<>();
+        final Set<String> packages = new HashSet<>();
+
+        VisitedUnit(CompilationUnit cu) {
+            packages.add(cu.getPackageDeclaration().map(p -> p.getNameAsString()).orElse(""));
+            for (var i : cu.getImports()) {
+                if (i.isAsterisk() && !i.isStatic()) packages.add(i.getNameAsString());
+            }
+        }
+    }
+
+    /**
+     * The class definitions seen by one compilation unit during the second visit. The classes it defines
+     * are kept separately, and come before the shared definitions, which are never modified.
+     */
+    private static class UnitDefinitions extends HashMap<String, String> {
+
+        private final Map<String, String> shared;
+
+        UnitDefinitions(Map<String, String> shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public String get(Object key) {
+            String own = super.get(key);
+            return own != null ? own : shared.get(key);
+        }
+    }
+
+    /**
+     * Create a symbol solver for the source files in the given folder.
+     */
+    private static JavaSymbolSolver createSymbolSolver(Path pathToSource) {
+        // Set up a minimal type solver that only looks at the classes used to run this sample.
+        CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
+        combinedTypeSolver.add(new ReflectionTypeSolver());
+        combinedTypeSolver.add(new JavaParserTypeSolver(pathToSource));
+        return new JavaSymbolSolver(combinedTypeSolver);
     }
 
     /**
@@ -122,6 +289,7 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
     /**
      * Parse all Java source files in the given folder. Returns a list of compilation units,
      * which can be used to visit all classes in the project and create edges.
+     * The files that cannot be read are logged and skipped. The compilation units are sorted by path.
      */
     public static List<CompilationUnit> parseSRCFolder(String srcFolder) {
 
@@ -129,24 +297,40 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
 
         Path pathToSource = new File(srcFolder).toPath();
 
-        // Set up a minimal type solver that only looks at the classes used to run this sample.
-        CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
-        combinedTypeSolver.add(new ReflectionTypeSolver());
-        combinedTypeSolver.add(new JavaParserTypeSolver(pathToSource));
-
         // Configure JavaParser to use type resolution
-        JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
         ParserConfiguration config = new ParserConfiguration();
-        config.setSymbolResolver(symbolSolver);
+        config.setSymbolResolver(createSymbolSolver(pathToSource));
 
+        // Parse the files in parallel, each with its own parser
         SourceRoot sourceRoot = new SourceRoot(pathToSource, config);
-        try {
-            sourceRoot.tryToParse();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        sourceRoot.tryToParseParallelized();
 
-        return sourceRoot.getCompilationUnits();
+        // In the order of their paths, so that every import visits them in the same order
+        List<CompilationUnit> compilations = new ArrayList<>(sourceRoot.getCompilationUnits());
+        compilations.sort(Comparator.comparing(cu -> cu.getStorage()
+                .map(storage -> storage.getPath().toString().replace("\\", "/")).orElse("")));
+        return compilations;
+    }
+
+    /**
+     * Parse the given Java source files of a packages folder in parallel, each with its own parser.
+     * @return the compilation unit of every file, without the files that cannot be parsed
+     */
+    public static Map<Path, CompilationUnit> parseFiles(Path packagesFolder, Collection<Path> files) {
+        ParserConfiguration config = new ParserConfiguration();
+        config.setSymbolResolver(createSymbolSolver(packagesFolder));
+
+        Map<Path, CompilationUnit> parsed = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            try {
+                var result = new JavaParser(config).parse(file);
+                if (result.isSuccessful())
+                    parsed.put(file, result.getResult().get());
+            } catch (IOException e) {
+                System.err.println("\nCould not read " + file + ": " + e.getMessage());
+            }
+        });
+        return parsed;
     }
 
     /**
@@ -154,6 +338,15 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
      * all interactions are set to USES, and duplicates are removed.
      */
     public EdgeClassVisitor(boolean allInteractions) {
+        this(allInteractions, new TypeResolutionCache());
+    }
+
+    /**
+     * Constructor that sets the interaction types to use, and the cache of the resolved types,
+     * which can be shared by the visitors of the same project.
+     */
+    public EdgeClassVisitor(boolean allInteractions, TypeResolutionCache typeCache) {
+        this.typeCache = typeCache;
         if (!allInteractions) {
             USES = "USES"; CALL = USES; CREATION = USES; DECLARATION = USES; RETURN = USES;
             PARAMETER = USES; EXTENDS = USES; IMPLEMENTS = USES; FIELD = USES; INSIDEOF = USES;
@@ -164,12 +357,17 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
      * Resolve the type (declaration) of the given object and create an edge if it is a valid class.
      * First try to resolve the type, if that fails try to match the type
      * with a class in the existing map (less accurate).
+     * The class types are resolved once per class, see {@link TypeResolutionCache}.
      */
     public void resolveOrMatchType(NodeWithType n, List<String> edges, Map<String, String> arg, String interaction) {
-        String resolved = null;
-        try {
-            resolved = n.getType().resolve().describe();
-        } catch (Exception | StackOverflowError ignored) {
+        Type type = n.getType();
+        String resolved;
+        if (currentClassName != null && (type.isClassOrInterfaceType() || type.isArrayType()))
+            resolved = typeCache.resolve(currentClassName, type.asString(), () -> type.resolve().describe());
+        else
+            resolved = resolveUncached(() -> type.resolve().describe());
+        if (resolved == null) {
+            addUnresolvedNames(type.asString());
             if (arg != null) resolved = arg.get(n.getTypeAsString());
         }
         if (resolved != null) {
@@ -181,13 +379,17 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
      * Resolve the class of the given class/interface and create an edge if it is a valid class.
      * First try to resolve the class, if that fails try to match the class
      * with a class in the existing map (less accurate).
+     * The classes are resolved once per class, see {@link TypeResolutionCache}.
      */
     public void resolveOrMatchClass(ClassOrInterfaceType n, List<String> edges, Map<String, String> arg, String interaction) {
         if (interaction.equals(USES)) return; // Skip generic uses
-        String resolved = null;
-        try {
-            resolved = n.resolve().describe();
-        } catch (Exception | StackOverflowError ignored) {
+        String resolved;
+        if (currentClassName != null)
+            resolved = typeCache.resolve(currentClassName, n.asString(), () -> n.resolve().describe());
+        else
+            resolved = resolveUncached(() -> n.resolve().describe());
+        if (resolved == null) {
+            addUnresolvedNames(n.asString());
             if (arg != null) resolved = arg.get(n.getNameAsString());
         }
         if (resolved != null) {
@@ -195,6 +397,34 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
         }
     }
 
+    /**
+     * Remember the names in a type that could not be resolved, so that the compilation unit can be
+     * visited again when a class with one of these names is added, see {@link SourceImportCache}.
+     */
+    private void addUnresolvedNames(String typeName) {
+        Matcher m = IDENTIFIER.matcher(typeName);
+        while (m.find()) unresolvedNames.add(m.group());
+    }
+
+    /**
+     * Returns the names in the types that this visitor could not resolve.
+     */
+    public Set<String> getUnresolvedNames() {
+        return unresolvedNames;
+    }
+
+    /**
+     * Resolve a type without the cache, for the types that depend on more than their name, like var.
+     * @return the description of the type, or null if it cannot be resolved
+     */
+    private static String resolveUncached(Supplier<String> resolver) {
+        try {
+            return resolver.get();
+        } catch (Exception | StackOverflowError ignored) {
+            return null;
+        }
+    }
+
     /**
      * Visit the compilation unit and create edges. Skips compilation units that cause stack overflow,
      * which is caused by excessive recursive class definitions in lambdas and anonymous classes.
@@ -311,6 +541,8 @@ public class EdgeClassVisitor extends GenericListVisitorAdapter<String, Map<Stri
             edges.addAll(createEdge(currentClassName, t, CALL));
             //System.out.println("Call to: " + t);
         } catch (Exception ignored) {
+            n.getScope().filter(Expression::isNameExpr)
+                    .ifPresent(scope -> addUnresolvedNames(scope.asNameExpr().getNameAsString()));
         }
         return edges;
     }
@@ -0,0 +1,380 @@
+package ca.usask.vga.layout.magnetic.io;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The number of commits and the last commit of every file in the history of a Git repository,
+ * collected in a single walk over the history instead of one log per file.
+ * <p>
+ * The commits are walked from HEAD, newest first. Each commit is compared with its parent, and
+ * every file it changed gets one more commit. The first commit seen for a file is its last commit.
+ * Renames are followed, so the commits made before a file was renamed count for its new path.
+ * A merge commit only counts for the files that differ from every parent, which are the files
+ * changed by the merge itself rather than by one of the merged branches.
+ * <p>
+ * The index can be saved in the <code>.git</code> folder of the repository, with the HEAD it was
+ * built at, see {@link #load(Repository, Supplier)}. When it is loaded again, only the commits made
+ * since that HEAD are walked, so reloading a large repository after a pull is almost instant.
+ */
+public class GitHistoryIndex {
+
+    /** Name of the cache file, in the .git folder of the repository. */
+    public static final String CACHE_FILE = "codenetvis-history";
+    private static final int CACHE_MAGIC = 0x434e5648, CACHE_VERSION = 1;
+
+    /**
+     * The history of one file, by its path at HEAD.
+     */
+    public static class FileHistory {
+        public int totalCommits;
+        public final String lastCommitSHA, lastCommitMessage, lastCommitAuthor;
+        public final Date lastCommitDate;
+
+        FileHistory(RevCommit lastCommit) {
+            lastCommitSHA = lastCommit.getName();
+            lastCommitMessage = lastCommit.getFullMessage();
+            lastCommitAuthor = lastCommit.getAuthorIdent().getName();
+            lastCommitDate = lastCommit.getAuthorIdent().getWhen();
+        }
+
+        FileHistory(int totalCommits, String lastCommitSHA, String lastCommitMessage,
+                    String lastCommitAuthor, Date lastCommitDate) {
+            this.totalCommits = totalCommits;
+            this.lastCommitSHA = lastCommitSHA;
+            this.lastCommitMessage = lastCommitMessage;
+            this.lastCommitAuthor = lastCommitAuthor;
+            this.lastCommitDate = lastCommitDate;
+        }
+    }
+
+    private final Map<String, FileHistory> files = new HashMap<>();
+    private int commitCount, newCommitCount;
+    private ObjectId head;
+
+    /** Older paths of the renamed files, mapped to their path at HEAD. Only used while walking. */
+    private final Map<String, String> renamedFrom = new HashMap<>();
+
+    private GitHistoryIndex() {}
+
+    /**
+     * Walks the whole history of the given repository from HEAD.
+     * @param hasBeenCancelled checked after every commit
+     * @return the index, or null if cancelled
+     */
+    public static GitHistoryIndex build(Repository repository, Supplier<Boolean> hasBeenCancelled) throws IOException {
+        return update(repository, null, hasBeenCancelled);
+    }
+
+    /**
+     * Returns the index of the given repository at its current HEAD, reading the cache file of the
+     * repository and only walking the commits made since it was saved. The cache is then saved again.
+     * The whole history is walked if there is no cache, if it cannot be read, or if its HEAD is no
+     * longer in the history, for example after a rebase.
+     * @param hasBeenCancelled checked after every commit
+     * @return the index, or null if cancelled
+     */
+    public static GitHistoryIndex load(Repository repository, Supplier<Boolean> hasBeenCancelled) throws IOException {
+        File cacheFile = repository.getDirectory() != null ? new File(repository.getDirectory(), CACHE_FILE) : null;
+
+        GitHistoryIndex cached = null;
+        if (cacheFile != null && cacheFile.isFile()) {
+            try {
+                cached = read(cacheFile);
+            } catch (IOException e) {
+                System.err.println("Could not read the Git history cache, rebuilding it: " + e.getMessage());
+            }
+        }
+
+        GitHistoryIndex index = update(repository, cached, hasBeenCancelled);
+        if (index == null)
+            return null;
+
+        if (cacheFile != null && (cached == null || index.newCommitCount > 0 || !index.head.equals(cached.head))) {
+            try {
+                index.write(cacheFile);
+            } catch (IOException e) {
+                System.err.println("Could not save the Git history cache: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Walks the commits from HEAD that are not in the history of the cached index, if any,
+     * and adds the cached index to them.
+     */
+    private static GitHistoryIndex update(Repository repository, GitHistoryIndex cached,
+                                          Supplier<Boolean> hasBeenCancelled) throws IOException {
+        GitHistoryIndex index = new GitHistoryIndex();
+        index.head = repository.resolve("HEAD");
+        if (index.head == null)
+            return index;
+
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit headCommit = walk.parseCommit(index.head);
+
+            if (cached != null && !isAncestor(walk, cached.head, headCommit))
+                cached = null;
+            if (cached != null && cached.head.equals(index.head))
+                return cached;
+
+            // Parents after their children, so that renames are seen before the older commits
+            walk.reset();
+            walk.sort(RevSort.TOPO);
+            walk.sort(RevSort.COMMIT_TIME_DESC, true);
+            walk.markStart(headCommit);
+            if (cached != null)
+                walk.markUninteresting(walk.parseCommit(cached.head));
+
+            ObjectReader reader = walk.getObjectReader();
+            RenameDetector renames = new RenameDetector(repository);
+
+            for (RevCommit commit : walk) {
+                if (hasBeenCancelled.get())
+                    return null;
+                index.commitCount++;
+
+                if (commit.getParentCount() > 1)
+                    index.addMerge(reader, commit);
+                else
+                    index.addCommit(reader, renames, commit);
+            }
+        }
+
+        index.newCommitCount = index.commitCount;
+        if (cached != null)
+            index.addOlder(cached);
+        index.renamedFrom.clear();
+        return index;
+    }
+
+    /**
+     * Checks if the given commit exists in the repository and is in the history of the given HEAD.
+     */
+    private static boolean isAncestor(RevWalk walk, ObjectId commitId, RevCommit head) throws IOException {
+        RevCommit commit;
+        try {
+            commit = walk.parseCommit(commitId);
+        } catch (MissingObjectException | IncorrectObjectTypeException e) {
+            return false;
+        }
+        return walk.isMergedInto(commit, head);
+    }
+
+    /**
+     * Records the files changed by a commit with at most one parent, following the renames.
+     */
+    private void addCommit(ObjectReader reader, RenameDetector renames, RevCommit commit) throws IOException {
+        List<DiffEntry> changes;
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            if (commit.getParentCount() == 0)
+                treeWalk.addTree(new EmptyTreeIterator());
+            else
+                treeWalk.addTree(commit.getParent(0).getTree());
+            treeWalk.addTree(commit.getTree());
+            changes = DiffEntry.scan(treeWalk);
+        }
+
+        renames.reset();
+        renames.addAll(changes);
+        changes = renames.compute();
+
+        for (DiffEntry change : changes) {
+            String path = change.getChangeType() == DiffEntry.ChangeType.DELETE ? change.getOldPath() : change.getNewPath();
+            String current = renamedFrom.getOrDefault(path, path);
+            record(current, commit);
+
+            if (change.getChangeType() == DiffEntry.ChangeType.RENAME)
+                renamedFrom.put(change.getOldPath(), current);
+        }
+    }
+
+    /**
+     * Records the files of a merge commit that differ from all of its parents.
+     */
+    private void addMerge(ObjectReader reader, RevCommit commit) throws IOException {
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            int parents = commit.getParentCount();
+            for (int p = 0; p < parents; p++)
+                treeWalk.addTree(commit.getParent(p).getTree());
+            treeWalk.addTree(commit.getTree());
+
+            while (treeWalk.next()) {
+                boolean changedByMerge = true;
+                for (int p = 0; p < parents && changedByMerge; p++)
+                    changedByMerge = !treeWalk.idEqual(p, parents);
+                if (!changedByMerge)
+                    continue;
+
+                String path = treeWalk.getPathString();
+                record(renamedFrom.getOrDefault(path, path), commit);
+            }
+        }
+    }
+
+    private void record(String path, RevCommit commit) {
+        FileHistory history = files.get(path);
+        if (history == null) {
+            history = new FileHistory(commit);
+            files.put(path, history);
+        }
+        history.totalCommits++;
+    }
+
+    /**
+     * Adds the index of an older HEAD to the commits walked since, following the renames made since.
+     * The last commits walked are newer, so they are kept.
+     */
+    private void addOlder(GitHistoryIndex older) {
+        commitCount += older.commitCount;
+        for (Map.Entry<String, FileHistory> entry : older.files.entrySet()) {
+            String current = renamedFrom.getOrDefault(entry.getKey(), entry.getKey());
+            FileHistory history = files.get(current);
+            if (history == null)
+                files.put(current, entry.getValue());
+            else
+                history.totalCommits += entry.getValue().totalCommits;
+        }
+    }
+
+    /**
+     * Returns the history of the file at the given path, relative to the root of the repository
+     * with / separators, or null if no commit changed it.
+     */
+    public FileHistory get(String path) {
+        return files.get(path);
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public int getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Returns the number of commits that were walked to build this index,
+     * which is less than {@link #getCommitCount()} if it was updated from the cache.
+     */
+    public int getNewCommitCount() {
+        return newCommitCount;
+    }
+
+    /**
+     * Saves the index in the given file. The commits are only written once, however many files they changed.
+     */
+    void write(File file) throws IOException {
+        // Write to a temporary file first, so that an interrupted write does not leave a broken cache
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp))))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            head.copyRawTo(out);
+            out.writeInt(commitCount);
+
+            Map<String, Integer> commitIndices = new HashMap<>();
+            List<FileHistory> commits = new ArrayList<>();
+            for (FileHistory history : files.values()) {
+                if (commitIndices.putIfAbsent(history.lastCommitSHA, commits.size()) == null)
+                    commits.add(history);
+            }
+
+            out.writeInt(commits.size());
+            for (FileHistory commit : commits) {
+                ObjectId.fromString(commit.lastCommitSHA).copyRawTo(out);
+                writeString(out, commit.lastCommitMessage);
+                writeString(out, commit.lastCommitAuthor);
+                out.writeLong(commit.lastCommitDate.getTime());
+            }
+
+            out.writeInt(files.size());
+            for (Map.Entry<String, FileHistory> entry : files.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().totalCommits);
+                out.writeInt(commitIndices.get(entry.getValue().lastCommitSHA));
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads an index saved by {@link #write(File)}.
+     */
+    static GitHistoryIndex read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+                throw new IOException("Unknown cache format");
+
+            GitHistoryIndex index = new GitHistoryIndex();
+            byte[] sha = new byte[Constants.OBJECT_ID_LENGTH];
+            in.readFully(sha);
+            index.head = ObjectId.fromRaw(sha);
+            index.commitCount = in.readInt();
+
+            FileHistory[] commits = new FileHistory[in.readInt()];
+            for (int c = 0; c < commits.length; c++) {
+                in.readFully(sha);
+                String message = readString(in), author = readString(in);
+                commits[c] = new FileHistory(0, ObjectId.fromRaw(sha).getName(), message, author, new Date(in.readLong()));
+            }
+
+            int fileCount = in.readInt();
+            for (int f = 0; f < fileCount; f++) {
+                String path = readString(in);
+                int totalCommits = in.readInt();
+                FileHistory commit = commits[in.readInt()];
+                index.files.put(path, new FileHistory(totalCommits, commit.lastCommitSHA,
+                        commit.lastCommitMessage, commit.lastCommitAuthor, commit.lastCommitDate));
+            }
+            return index;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupted cache", e);
+        }
+    }
+
+    // Unlike writeUTF, not limited to 64 KB, which long commit messages can exceed
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Corrupted cache");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -1,6 +1,7 @@
 
 package ca.usask.vga.layout.magnetic.io;
 
+import ca.usask.vga.layout.magnetic.util.PhaseEvents;
 import com.google.common.collect.Iterables;
 import org.cytoscape.model.CyNetwork;
 import org.cytoscape.model.CyNode;
@@ -138,6 +139,7 @@ public class JGitMetadataInput implements AutoCloseable {
     /**
      * Attempts to load the Git metadata for the provided node in the network.
      * If data is unavailable, prints the error message but does not throw an exception.
+     * To load the metadata of many nodes, {@link #loadAllNodeData(CyNetwork, TaskMonitor)} is much faster.
      */
     public void getNodeData(CyNetwork network, CyNode node) {
         String relativePath = getNodePath(network, node);
@@ -148,8 +150,6 @@ public class JGitMetadataInput implements AutoCloseable {
 
         System.out.print("Relative Path: " + relativePath + "\r");
 
-        CyTable nodeTable = network.getDefaultNodeTable();
-
         int totalCommits = 0;
         Date lastCommitDate = new Date(0);
         String lastCommitMessage = "", lastCommitAuthor = "", lastCommitSHA = "";
@@ -168,6 +168,16 @@ public class JGitMetadataInput implements AutoCloseable {
             return;
         }
 
+        setNodeData(network, node, totalCommits, lastCommitDate, lastCommitMessage, lastCommitAuthor, lastCommitSHA);
+    }
+
+    /**
+     * Updates the Git metadata columns of the given node.
+     */
+    private void setNodeData(CyNetwork network, CyNode node, int totalCommits, Date lastCommitDate,
+                             String lastCommitMessage, String lastCommitAuthor, String lastCommitSHA) {
+        CyTable nodeTable = network.getDefaultNodeTable();
+
         String summary = lastCommitMessage.split("\\n")[0] + "\n" +
                 "(" + lastCommitAuthor + ", " + dateFormat.format(lastCommitDate) + ")";
 
@@ -182,6 +192,8 @@ public class JGitMetadataInput implements AutoCloseable {
 
     /**
      * Loads all the node Git metadata for the given network. Blocks the current thread.
+     * The whole history is walked only once, and only the new commits are walked
+     * when the data is loaded again, see {@link GitHistoryIndex#load}.
      */
     public void loadAllNodeData(CyNetwork network, TaskMonitor taskMonitor) {
         createDataColumns(network);
@@ -189,16 +201,46 @@ public class JGitMetadataInput implements AutoCloseable {
         if (taskMonitor != null) taskMonitor.setProgress(0);
         float totalNodes = network.getNodeCount(), nodesProcessed = 0;
 
-        // For every node, load the metadata by its local filepath
-        for (CyNode node : network.getNodeList()) {
-            if (cancelled) return;
-            System.out.print("\33[2KReading node " + node.getSUID() + "; ");
-            getNodeData(network, node);
-            nodesProcessed++;
-            if (taskMonitor != null) taskMonitor.setProgress(nodesProcessed / totalNodes);
+        PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.GIT_METADATA)
+                .setSize(network.getNodeCount(), network.getEdgeCount());
+
+        try {
+            if (taskMonitor != null) taskMonitor.setStatusMessage("Reading the commit history...");
+            GitHistoryIndex history;
+            try {
+                history = GitHistoryIndex.load(git.getRepository(), () -> cancelled);
+            } catch (IOException e) {
+                System.err.println("Error reading the Git history");
+                e.printStackTrace();
+                return;
+            }
+            if (history == null) return;
+
+            System.out.println("Git history read: " + history.getCommitCount() + " commits ("
+                    + history.getNewCommitCount() + " not cached), " + history.getFileCount() + " files.");
+            if (taskMonitor != null) taskMonitor.setStatusMessage("Updating the nodes...");
+
+            // For every node, find the metadata by its local filepath
+            for (CyNode node : network.getNodeList()) {
+                if (cancelled) return;
+                String relativePath = getNodePath(network, node);
+                if (relativePath != null) {
+                    // Git only accepts / as separators
+                    GitHistoryIndex.FileHistory file = history.get(relativePath.replace("\\", "/"));
+                    if (file != null)
+                        setNodeData(network, node, file.totalCommits, file.lastCommitDate,
+                                file.lastCommitMessage, file.lastCommitAuthor, file.lastCommitSHA);
+                    else
+                        setNodeData(network, node, 0, new Date(0), "", "", "");
+                }
+                nodesProcessed++;
+                if (taskMonitor != null) taskMonitor.setProgress(nodesProcessed / totalNodes);
+            }
+        } finally {
+            phase.setCount((long) nodesProcessed).end();
         }
 
-        System.out.println("\nGit data loaded for " + (int) nodesProcessed + " nodes.");
+        System.out.println("Git data loaded for " + (int) nodesProcessed + " nodes.");
     }
 
     /**
@@ -1,7 +1,9 @@
 package ca.usask.vga.layout.magnetic.io;
 
+import ca.usask.vga.layout.magnetic.util.PhaseEvents;
 import gr.gousiosg.javacg.stat.ClassVisitor;
 import org.apache.bcel.classfile.ClassParser;
+import org.cytoscape.application.CyApplicationConfiguration;
 import org.cytoscape.equations.EquationCompiler;
 import org.cytoscape.io.BasicCyFileFilter;
 import org.cytoscape.io.CyFileFilter;
@@ -51,11 +53,14 @@ public class JavaReader extends AbstractInputStreamTaskFactory {
         public final CyNetworkFactory nf;
         public final CyNetworkViewFactory vf;
         public final EquationCompiler eq;
+        public final CyApplicationConfiguration config;
 
-        public CyAccess(CyNetworkFactory nf, CyNetworkViewFactory vf, EquationCompiler eq) {
+        public CyAccess(CyNetworkFactory nf, CyNetworkViewFactory vf, EquationCompiler eq,
+                        CyApplicationConfiguration config) {
             this.nf = nf;
             this.vf = vf;
             this.eq = eq;
+            this.config = config;
         }
     }
 
@@ -160,6 +165,9 @@ public class JavaReader extends AbstractInputStreamTaskFactory {
         // @Tunable(description="Hide anonymous classes:")
         public boolean hideAnonymousClasses = true;
 
+        // @Tunable(description="Import all source files again:")
+        public boolean fullImport = false;
+
         /**
          * Creates a new ReaderTask for a JAR file only, given the input stream and the name of the file.
          */
@@ -239,7 +247,7 @@ public class JavaReader extends AbstractInputStreamTaskFactory {
                 if (srcFolder == null)
                     readFromJar(nodes, edges);
                 else
-                    readFromSource(nodes, edges);
+                    readFromSource(nodes, edges, taskMonitor);
             }
 
             if (cancelled) return;
@@ -355,22 +363,39 @@ public class JavaReader extends AbstractInputStreamTaskFactory {
         /**
          * Reads the source folder and adds all the edges and nodes to the sets.
          * Uses {@link EdgeClassVisitor} to parse the source folder into a list of edges.
+         * Only the files that changed since the last import and the files that use their classes are parsed,
+         * so in a few cases the edges can differ from a full import, see {@link SourceImportCache}.
+         * If {@link #fullImport} is set, every file is parsed again and the saved import is replaced.
+         * Shows the statistics of the import and of the {@link TypeResolutionCache} once done.
          */
-        private void readFromSource(Set<String> nodes, Set<String> edges) {
+        private void readFromSource(Set<String> nodes, Set<String> edges, TaskMonitor taskMonitor) {
 
             if (!EdgeClassVisitor.isValidSRC(srcFolder))
                 throw new RuntimeException("Invalid SRC folder");
 
-            var parsed = EdgeClassVisitor.parseSRCFolder(srcFolder);
-            var result = EdgeClassVisitor.visitAll(parsed, false, () -> cancelled);
+            PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.SOURCE_IMPORT).setDetail(srcFolder);
+            try {
+                var importCache = new SourceImportCache(srcFolder,
+                        cy.config.getAppConfigurationDirectoryLocation(JavaReader.class), false);
+                var typeCache = new TypeResolutionCache();
+                var result = importCache.importFolder(typeCache, fullImport, () -> cancelled);
+                phase.setCount(importCache.getFileCount());
+
+                if (result == null || cancelled) return;
 
-            if (result == null || cancelled) return;
+                System.out.println(importCache.getSummary());
+                System.out.println(typeCache.getSummary());
+                taskMonitor.showMessage(TaskMonitor.Level.INFO, importCache.getSummary());
+                taskMonitor.showMessage(TaskMonitor.Level.INFO, typeCache.getSummary());
 
-            nodes.addAll(result[0].stream().map(this::formatEdgeString).collect(Collectors.toSet()));
-            edges.addAll(result[1].stream().map(this::formatEdgeString).collect(Collectors.toSet()));
+                nodes.addAll(result[0].stream().map(this::formatEdgeString).collect(Collectors.toSet()));
+                edges.addAll(result[1].stream().map(this::formatEdgeString).collect(Collectors.toSet()));
 
-            nodes.remove(null);
-            edges.remove(null);
+                nodes.remove(null);
+                edges.remove(null);
+            } finally {
+                phase.setSize(nodes.size(), edges.size()).end();
+            }
         }
 
         /**
@@ -394,6 +419,9 @@ public class JavaReader extends AbstractInputStreamTaskFactory {
             };
 
 
+            PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.JAR_IMPORT).setDetail(inputName);
+            int classFiles = 0;
+
             try (var jar = new JarInputStream(inputStream)) {
                 var e = jar.getNextJarEntry();
                 while (e != null) {
@@ -406,12 +434,15 @@ public class JavaReader extends AbstractInputStreamTaskFactory {
                         var classVisitor = new ClassVisitor(cp.parse());
                         classVisitor.setPrintStream(ps);
                         classVisitor.start();
+                        classFiles++;
                     }
 
                     e = jar.getNextJarEntry();
                 }
             } catch (Exception ex) {
                 ex.printStackTrace();
+            } finally {
+                phase.setSize(nodes.size(), edges.size()).setCount(classFiles).end();
             }
         }
 
@@ -0,0 +1,373 @@
+package ca.usask.vga.layout.magnetic.io;
+
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Imports a Java source folder like {@link EdgeClassVisitor#visitAll}, but saves the classes and edges found
+ * in every file with a hash of its content, so that the next import of the same folder only parses the files
+ * that changed since.
+ * <p>
+ * A file is parsed again if it was modified or added, or if one of its edges goes to a class that is or was
+ * defined in a modified or deleted file, since a change of that class, like a method moved to a supertype or
+ * a new return type, can change the edges of the files that use it. The cache also keeps the names in the types
+ * that a file could not resolve, and the packages in which it searches simple names (its own package and its
+ * wildcard imports), so a file is parsed again when a new class has one of these names or is in one of these
+ * packages, since the class can resolve one of its types or hide a class it imports. The classes and edges of
+ * the other files are read from the cache.
+ * <p>
+ * Only the types and the scopes of method calls are checked, so an unchanged file can still differ from
+ * a full import in rare cases, like a method call on an expression whose type was unknown. A full import
+ * ignores the cache and parses every file again.
+ * <p>
+ * The cache is saved in the .git folder of the repository that contains the source folder,
+ * or in the configuration folder of the app if there is none, so that nothing is added to the source folder.
+ */
+public class SourceImportCache {
+
+    private static final int CACHE_MAGIC = 0x434e5653, CACHE_VERSION = 2;
+
+    /**
+     * The classes and edges found in a source file.
+     */
+    private static class FileEntry {
+        byte[] hash;
+        /** The qualified name of every class of the file, by simple name. */
+        Map<String, String> definitions = Collections.emptyMap();
+        Set<String> edges = Collections.emptySet();
+        /** The names in the types that could not be resolved, and the packages in which simple names are searched. */
+        Set<String> unresolvedNames = Collections.emptySet(), packages = Collections.emptySet();
+    }
+
+    private final Path packagesFolder;
+    private final boolean allInteractions;
+    private final File cacheFile;
+
+    private int fileCount, modified, added, deleted, dependents;
+
+    /**
+     * @param srcFolder the source folder to import, see {@link EdgeClassVisitor#getPackagesFolder(String)}
+     * @param appFolder the configuration folder of the app, where the cache is saved if the source folder
+     *                  is not in a Git repository
+     * @param allInteractions whether to include all interaction names or remove redundant edges
+     */
+    public SourceImportCache(String srcFolder, File appFolder, boolean allInteractions) {
+        this.packagesFolder = Paths.get(EdgeClassVisitor.getPackagesFolder(srcFolder)).toAbsolutePath().normalize();
+        this.allInteractions = allInteractions;
+        this.cacheFile = getCacheFile(packagesFolder, appFolder);
+    }
+
+    /**
+     * Returns the cache file of the given packages folder.
+     */
+    private static File getCacheFile(Path packagesFolder, File appFolder) {
+        String name = Integer.toHexString(packagesFolder.toString().hashCode());
+        File root = JGitMetadataInput.findGitRepoRoot(packagesFolder.toFile());
+        if (root != null && new File(root, ".git").isDirectory())
+            return new File(new File(root, ".git"), "codenetvis-import-" + name);
+        return new File(appFolder, "source-import-" + name);
+    }
+
+    /**
+     * Imports the source folder, parsing only the files that changed since the last import, and saves the cache.
+     * @param typeCache the resolved types, whose statistics can be shown once the import is done
+     * @param fullImport whether to ignore the cache and parse every file, to replace the cache
+     * @param hasBeenCancelled a function that returns true if the operation has been cancelled
+     * @return two sets of nodes and edges, like {@link EdgeClassVisitor#visitAll}, or null if cancelled
+     */
+    public Set<String>[] importFolder(TypeResolutionCache typeCache, boolean fullImport, Supplier<Boolean> hasBeenCancelled) {
+        Map<String, byte[]> hashes = hashSourceFiles();
+        fileCount = hashes.size();
+
+        Map<String, FileEntry> cached = Collections.emptyMap();
+        if (!fullImport && cacheFile.isFile()) {
+            try {
+                cached = read();
+            } catch (IOException e) {
+                System.err.println("Could not read the source import cache, importing all files: " + e.getMessage());
+            }
+        }
+
+        // Sort the files by whether they changed since the last import
+        Map<String, FileEntry> files = new HashMap<>();
+        List<String> changed = new ArrayList<>();
+        modified = added = deleted = dependents = 0;
+        for (var file : hashes.entrySet()) {
+            FileEntry entry = cached.get(file.getKey());
+            if (entry != null && Arrays.equals(entry.hash, file.getValue())) {
+                files.put(file.getKey(), entry);
+            } else {
+                if (entry != null) modified++;
+                else added++;
+                changed.add(file.getKey());
+            }
+        }
+        for (var path : cached.keySet())
+            if (!hashes.containsKey(path)) deleted++;
+
+        if (!changed.isEmpty() || deleted > 0) {
+            try (var visit = new EdgeClassVisitor.ParallelVisit(allInteractions, typeCache, hasBeenCancelled)) {
+                if (!update(visit, files, changed, cached, hashes))
+                    return null;
+            }
+            try {
+                write(files);
+            } catch (IOException e) {
+                System.err.println("Could not save the source import cache: " + e.getMessage());
+            }
+        }
+
+        Set<String> nodes = new HashSet<>(), edges = new HashSet<>();
+        for (FileEntry entry : files.values()) {
+            nodes.addAll(entry.definitions.values());
+            edges.addAll(entry.edges);
+        }
+        System.out.println("\nDone Java class import!");
+        return new Set[]{nodes, edges};
+    }
+
+    /**
+     * Parses the changed files and the files that depend on a class of a modified or deleted file,
+     * or that may resolve a type to a new class, and adds them to the files.
+     * @param files the unchanged files, to which the parsed files are added
+     * @return false if cancelled
+     */
+    private boolean update(EdgeClassVisitor.ParallelVisit visit, Map<String, FileEntry> files, List<String> changed,
+                           Map<String, FileEntry> cached, Map<String, byte[]> hashes) {
+        // Find the classes of the changed files
+        Map<String, CompilationUnit> changedUnits = parse(changed);
+        List<String> parsed = new ArrayList<>(changedUnits.keySet());
+        var definitions = visit.defineClasses(getUnits(parsed, changedUnits));
+        if (definitions == null) return false;
+
+        for (String path : changed) {
+            FileEntry entry = new FileEntry();
+            entry.hash = hashes.get(path);
+            files.put(path, entry);
+        }
+        for (int i = 0; i < parsed.size(); i++)
+            files.get(parsed.get(i)).definitions = definitions.get(i);
+
+        // In the order of the paths, like a full import
+        for (FileEntry entry : new TreeMap<>(files).values())
+            visit.classDefinitions.putAll(entry.definitions);
+
+        // The classes that were or are defined in the modified and deleted files, whose members may have changed
+        Set<String> affected = new HashSet<>();
+        for (var old : cached.entrySet()) {
+            FileEntry entry = files.get(old.getKey());
+            if (entry == old.getValue()) continue;
+            affected.addAll(old.getValue().definitions.values());
+            if (entry != null) affected.addAll(entry.definitions.values());
+        }
+
+        // The simple names and packages of the classes that were not defined before
+        Set<String> oldClasses = new HashSet<>(), newNames = new HashSet<>(), newPackages = new HashSet<>();
+        for (FileEntry entry : cached.values())
+            oldClasses.addAll(entry.definitions.values());
+        for (String path : parsed) {
+            for (var definition : files.get(path).definitions.entrySet()) {
+                if (oldClasses.contains(definition.getValue())) continue;
+                newNames.add(definition.getKey());
+                String name = definition.getValue().replace('$', '.');
+                newPackages.add(name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : "");
+            }
+        }
+
+        // Unchanged files with edges to the affected classes, or that may resolve a type to a new class,
+        // must be visited again
+        List<String> dependent = new ArrayList<>();
+        for (var file : files.entrySet()) {
+            if (changedUnits.containsKey(file.getKey())) continue;
+            FileEntry entry = file.getValue();
+            if (!Collections.disjoint(entry.unresolvedNames, newNames)
+                    || !Collections.disjoint(entry.packages, newPackages)
+                    || !affected.isEmpty() && entry.edges.stream().anyMatch(e -> affected.contains(e.split(" ")[1])))
+                dependent.add(file.getKey());
+        }
+        dependents = dependent.size();
+        Map<String, CompilationUnit> units = new HashMap<>(changedUnits);
+        units.putAll(parse(dependent));
+
+        List<String> visited = new ArrayList<>(units.keySet());
+        var results = visit.findEdges(getUnits(visited, units));
+        if (results == null) return false;
+
+        for (int i = 0; i < visited.size(); i++) {
+            FileEntry old = files.get(visited.get(i)), entry = new FileEntry();
+            entry.hash = old.hash;
+            entry.definitions = old.definitions;
+            entry.edges = results.get(i).edges;
+            entry.unresolvedNames = results.get(i).unresolvedNames;
+            entry.packages = results.get(i).packages;
+            files.put(visited.get(i), entry);
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the paths, and returns their compilation units in the same order.
+     */
+    private static List<CompilationUnit> getUnits(List<String> paths, Map<String, CompilationUnit> units) {
+        Collections.sort(paths);
+        List<CompilationUnit> sorted = new ArrayList<>();
+        for (String path : paths)
+            sorted.add(units.get(path));
+        return sorted;
+    }
+
+    /**
+     * Parses the files at the given paths, relative to the packages folder.
+     * @return the compilation unit of every path, without the files that cannot be parsed
+     */
+    private Map<String, CompilationUnit> parse(List<String> paths) {
+        Map<Path, String> files = new HashMap<>();
+        for (String path : paths)
+            files.put(packagesFolder.resolve(path), path);
+
+        Map<String, CompilationUnit> units = new HashMap<>();
+        EdgeClassVisitor.parseFiles(packagesFolder, files.keySet()).forEach((file, cu) -> units.put(files.get(file), cu));
+        return units;
+    }
+
+    /**
+     * Returns the SHA-1 hash of every Java source file in the packages folder, by path relative to the folder,
+     * with / separators. The files that cannot be read are skipped.
+     */
+    private Map<String, byte[]> hashSourceFiles() {
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(packagesFolder)) {
+            sources = walk.filter(p -> p.toString().endsWith(".java") && Files.isRegularFile(p))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<String, byte[]> hashes = Collections.synchronizedMap(new HashMap<>());
+        sources.parallelStream().forEach(file -> {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                hashes.put(packagesFolder.relativize(file).toString().replace("\\", "/"),
+                        digest.digest(Files.readAllBytes(file)));
+            } catch (IOException e) {
+                System.err.println("\nCould not read " + file + ": " + e.getMessage());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return hashes;
+    }
+
+    /**
+     * Returns the number of source files found by the last import.
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Returns the number of files parsed by the last import, because they changed
+     * or depend on a class of a modified, deleted or added file.
+     */
+    public int getParsedCount() {
+        return modified + added + dependents;
+    }
+
+    /**
+     * Returns a one line summary of the last import, to show at the end of an import.
+     */
+    public String getSummary() {
+        return String.format("Source import: %d files, %d parsed (%d modified, %d added, %d dependent), %d deleted",
+                fileCount, getParsedCount(), modified, added, dependents, deleted);
+    }
+
+    private void write(Map<String, FileEntry> files) throws IOException {
+        // Write to a temporary file first, so that an interrupted write does not leave a broken cache
+        cacheFile.getParentFile().mkdirs();
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(temp))))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeBoolean(allInteractions);
+
+            out.writeInt(files.size());
+            for (var file : files.entrySet()) {
+                FileEntry entry = file.getValue();
+                out.writeUTF(file.getKey());
+                out.writeShort(entry.hash.length);
+                out.write(entry.hash);
+                out.writeInt(entry.definitions.size());
+                for (var definition : entry.definitions.entrySet()) {
+                    out.writeUTF(definition.getKey());
+                    out.writeUTF(definition.getValue());
+                }
+                writeStrings(out, entry.edges);
+                writeStrings(out, entry.unresolvedNames);
+                writeStrings(out, entry.packages);
+            }
+        }
+        Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the cache, or returns an empty cache if it was saved with other interaction names.
+     */
+    private Map<String, FileEntry> read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(cacheFile))))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+                throw new IOException("Unknown cache format");
+            if (in.readBoolean() != allInteractions)
+                return Collections.emptyMap();
+
+            Map<String, FileEntry> files = new HashMap<>();
+            int fileCount = in.readInt();
+            for (int f = 0; f < fileCount; f++) {
+                String path = in.readUTF();
+                FileEntry entry = new FileEntry();
+                entry.hash = new byte[in.readUnsignedShort()];
+                in.readFully(entry.hash);
+
+                int definitionCount = in.readInt();
+                entry.definitions = new LinkedHashMap<>();
+                for (int d = 0; d < definitionCount; d++)
+                    entry.definitions.put(in.readUTF(), in.readUTF());
+
+                entry.edges = readStrings(in);
+                entry.unresolvedNames = readStrings(in);
+                entry.packages = readStrings(in);
+                files.put(path, entry);
+            }
+            return files;
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings)
+            out.writeUTF(s);
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < count; i++)
+            strings.add(in.readUTF());
+        return strings;
+    }
+
+}
@@ -0,0 +1,78 @@
+package ca.usask.vga.layout.magnetic.io;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the types resolved by the symbol solver during a source import, so that every type name
+ * is only resolved once in each class, instead of once per occurrence. The failures are remembered too,
+ * since a type that cannot be resolved costs an exception, or even a stack overflow, every time.
+ * <p>
+ * A type name is resolved in the context of the class it is written in, which determines the package,
+ * the imports and the nested types it can refer to. The cache can be shared by the threads of an import.
+ */
+public class TypeResolutionCache {
+
+    private final Map<String, Optional<String>> resolved = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), failures = new LongAdder();
+
+    /**
+     * Returns the resolved type of the given name, calling the resolver if it is not cached yet.
+     * @param className the qualified name of the class the type name is written in
+     * @param typeName the type, as written in the source
+     * @param resolver resolves the type, may throw an exception if it cannot
+     * @return the description of the type, or null if it cannot be resolved
+     */
+    public String resolve(String className, String typeName, Supplier<String> resolver) {
+        String key = className + " " + typeName;
+        Optional<String> cached = resolved.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached.orElse(null);
+        }
+        misses.increment();
+
+        // Not computeIfAbsent, the resolver can take long and look up other types
+        String result;
+        try {
+            result = resolver.get();
+        } catch (Exception | StackOverflowError e) {
+            result = null;
+        }
+        if (result == null) failures.increment();
+        resolved.put(key, Optional.ofNullable(result));
+        return result;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of type names that could not be resolved.
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public double getHitRate() {
+        long lookups = getHits() + getMisses();
+        return lookups == 0 ? 0 : getHits() / (double) lookups;
+    }
+
+    /**
+     * Returns a one line summary of the statistics, to show at the end of an import.
+     */
+    public String getSummary() {
+        return String.format("Type resolution cache: %d lookups, %.1f%% hits, %d types resolved, %d not resolvable",
+                getHits() + getMisses(), 100 * getHitRate(), getMisses() - getFailures(), getFailures());
+    }
+
+}
@@ -0,0 +1,144 @@
+package ca.usask.vga.layout.magnetic.poles;
+
+import org.cytoscape.model.CyNode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The closest pole of every node of a network, computed once from the distances of every pole.
+ * For each node, the table stores the index of its closest pole, the distance to it,
+ * and how many poles are at that distance, so that the queries of the {@link PoleManager}
+ * are answered without going through the pole list. The table can also be queried by node index,
+ * for the graphs that are only known by the indices of their nodes.
+ */
+public class ClosestPoleTable {
+
+    private static final byte MULTIPLE = 2;
+
+    private final PoleDistanceEngine engine;
+    private final CyNode[] poles;
+    private final short[][] distances;
+
+    private final int[] closestPole;
+    private final short[] closestDistance;
+    private final byte[] poleCount; // 0 if disconnected, 1 if closest to one pole, 2 if closest to multiple
+
+    /**
+     * @param engine the engine the distances are indexed by
+     * @param poles the poles of the network
+     * @param distances the distances from every pole, in the same order
+     */
+    public ClosestPoleTable(PoleDistanceEngine engine, CyNode[] poles, short[][] distances) {
+        this.engine = engine;
+        this.poles = poles;
+        this.distances = distances;
+
+        int n = engine.getNodeCount();
+        closestPole = new int[n];
+        closestDistance = new short[n];
+        poleCount = new byte[n];
+
+        for (int i = 0; i < n; i++) {
+            int closest = -1;
+            short closestDist = PoleDistanceEngine.UNREACHABLE;
+            byte count = 0;
+
+            for (int p = 0; p < distances.length; p++) {
+                short dist = distances[p][i];
+                if (dist == PoleDistanceEngine.UNREACHABLE) continue;
+                if (count == 0 || dist < closestDist) {
+                    closest = p;
+                    closestDist = dist;
+                    count = 1;
+                } else if (dist == closestDist) {
+                    count = MULTIPLE;
+                }
+            }
+
+            closestPole[i] = closest;
+            closestDistance[i] = closestDist;
+            poleCount[i] = count;
+        }
+    }
+
+    /**
+     * Creates the table of a graph whose poles are only known by their order in the distances,
+     * to be queried by node index.
+     * @param engine the engine the distances are indexed by
+     * @param distances the distances from every pole
+     */
+    public ClosestPoleTable(PoleDistanceEngine engine, short[][] distances) {
+        this(engine, null, distances);
+    }
+
+    /**
+     * Returns 0 if the node is disconnected from every pole, 1 if it is closest to one pole,
+     * or 2 if it is closest to multiple poles.
+     */
+    public int getPoleCount(CyNode node) {
+        return getPoleCount(engine.indexOf(node));
+    }
+
+    /**
+     * Returns the pole count of the node at the given index, see {@link #getPoleCount(CyNode)}.
+     */
+    public int getPoleCount(int node) {
+        return node < 0 ? 0 : poleCount[node];
+    }
+
+    /**
+     * Returns the closest pole to the given node, or null if the node is closest to multiple poles or to none.
+     */
+    public CyNode getClosestPole(CyNode node) {
+        int p = getClosestPoleIndex(engine.indexOf(node));
+        return p < 0 ? null : poles[p];
+    }
+
+    /**
+     * Returns the position in the distances of the closest pole to the node at the given index,
+     * or -1 if the node is closest to multiple poles or to none.
+     */
+    public int getClosestPoleIndex(int node) {
+        if (node < 0 || poleCount[node] != 1)
+            return -1;
+        return closestPole[node];
+    }
+
+    /**
+     * Returns the distance to the closest poles of the given node, or {@link PoleDistanceEngine#UNREACHABLE}.
+     */
+    public int getDistance(CyNode node) {
+        return getDistance(engine.indexOf(node));
+    }
+
+    /**
+     * Returns the distance to the closest poles of the node at the given index, see {@link #getDistance(CyNode)}.
+     */
+    public int getDistance(int node) {
+        return node < 0 ? PoleDistanceEngine.UNREACHABLE : closestDistance[node];
+    }
+
+    /**
+     * Returns a new list of every pole at the closest distance from the given node.
+     */
+    public Collection<CyNode> getClosestPoles(CyNode node) {
+        List<CyNode> result = new ArrayList<>();
+        int i = engine.indexOf(node);
+        if (i < 0 || poleCount[i] == 0)
+            return result;
+
+        if (poleCount[i] == 1) {
+            result.add(poles[closestPole[i]]);
+            return result;
+        }
+
+        for (int p = closestPole[i]; p < poles.length; p++) {
+            if (distances[p][i] == closestDistance[i])
+                result.add(poles[p]);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,195 @@
+package ca.usask.vga.layout.magnetic.poles;
+
+import org.cytoscape.model.CyEdge;
+import org.cytoscape.model.CyNetwork;
+import org.cytoscape.model.CyNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the shortest distances from poles to every other node of a network.
+ * The network is copied once into a compact adjacency structure indexed by integers,
+ * with the outgoing and incoming edges of every node stored in contiguous arrays,
+ * so the breadth-first searches only work on primitive arrays.
+ * <p>
+ * The engine can be created from a Cytoscape network with {@link #fromNetwork(CyNetwork)},
+ * or from plain edge arrays, in which case the nodes are only known by their index.
+ */
+public class PoleDistanceEngine {
+
+    /** Distance of the nodes that cannot be reached from the pole. */
+    public static final short UNREACHABLE = -1;
+
+    private final int nodeCount, edgeCount;
+
+    // outgoing edges of node i are outTarget[outStart[i]] to outTarget[outStart[i+1]-1]
+    private final int[] outStart, outTarget;
+    // incoming edges of node i are inSource[inStart[i]] to inSource[inStart[i+1]-1]
+    private final int[] inStart, inSource;
+
+    private final CyNode[] nodes;
+    private final Map<CyNode, Integer> nodeIndex;
+
+    /**
+     * Creates an engine for a graph given as a list of directed edges.
+     * @param nodeCount the number of nodes, indexed from 0
+     * @param edgeSource the source node of every edge
+     * @param edgeTarget the target node of every edge
+     */
+    public PoleDistanceEngine(int nodeCount, int[] edgeSource, int[] edgeTarget) {
+        this(nodeCount, edgeSource, edgeTarget, null, null);
+    }
+
+    private PoleDistanceEngine(int nodeCount, int[] edgeSource, int[] edgeTarget,
+                               CyNode[] nodes, Map<CyNode, Integer> nodeIndex) {
+        if (edgeSource.length != edgeTarget.length)
+            throw new IllegalArgumentException("Edge sources and targets must have the same length");
+
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeSource.length;
+        this.nodes = nodes;
+        this.nodeIndex = nodeIndex;
+
+        outStart = new int[nodeCount + 1];
+        inStart = new int[nodeCount + 1];
+        outTarget = new int[edgeCount];
+        inSource = new int[edgeCount];
+
+        // Count the degrees, then place every edge in its node's range
+        for (int e = 0; e < edgeCount; e++) {
+            outStart[edgeSource[e] + 1]++;
+            inStart[edgeTarget[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            outStart[i + 1] += outStart[i];
+            inStart[i + 1] += inStart[i];
+        }
+
+        int[] outNext = Arrays.copyOf(outStart, nodeCount);
+        int[] inNext = Arrays.copyOf(inStart, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            outTarget[outNext[edgeSource[e]]++] = edgeTarget[e];
+            inSource[inNext[edgeTarget[e]]++] = edgeSource[e];
+        }
+    }
+
+    /**
+     * Creates an engine for the current nodes and edges of the given network.
+     */
+    public static PoleDistanceEngine fromNetwork(CyNetwork network) {
+        List<CyNode> nodeList = network.getNodeList();
+        CyNode[] nodes = nodeList.toArray(new CyNode[0]);
+        Map<CyNode, Integer> nodeIndex = new HashMap<>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++)
+            nodeIndex.put(nodes[i], i);
+
+        List<CyEdge> edgeList = network.getEdgeList();
+        int[] source = new int[edgeList.size()];
+        int[] target = new int[edgeList.size()];
+        int count = 0;
+        for (CyEdge e : edgeList) {
+            Integer s = nodeIndex.get(e.getSource());
+            Integer t = nodeIndex.get(e.getTarget());
+            if (s == null || t == null) continue;
+            source[count] = s;
+            target[count] = t;
+            count++;
+        }
+
+        return new PoleDistanceEngine(nodes.length, Arrays.copyOf(source, count), Arrays.copyOf(target, count),
+                nodes, nodeIndex);
+    }
+
+    /**
+     * Returns true if the engine no longer matches the nodes and edges of the given network.
+     */
+    public boolean isOutdated(CyNetwork network) {
+        return network.getNodeCount() != nodeCount || network.getEdgeCount() != edgeCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getOutDegree(int node) {
+        return outStart[node + 1] - outStart[node];
+    }
+
+    public int getInDegree(int node) {
+        return inStart[node + 1] - inStart[node];
+    }
+
+    /**
+     * Returns the index of the given node, or -1 if it is not part of the network.
+     */
+    public int indexOf(CyNode node) {
+        if (nodeIndex == null || node == null) return -1;
+        Integer i = nodeIndex.get(node);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Returns the node at the given index, if the engine was created from a network.
+     */
+    public CyNode getNode(int index) {
+        return nodes == null ? null : nodes[index];
+    }
+
+    /**
+     * Returns the shortest distances from the given pole to every node, or {@link #UNREACHABLE}.
+     * @param pole the index of the pole
+     * @param isOutwards if true, the edges are followed from source to target, otherwise
+     *                   from target to source, which gives the distance from every node to the pole
+     */
+    public short[] distancesFrom(int pole, boolean isOutwards) {
+        short[] dist = new short[nodeCount];
+        distancesFrom(pole, isOutwards, dist, new int[nodeCount]);
+        return dist;
+    }
+
+    /**
+     * Returns the shortest distances from each of the given poles, as {@link #distancesFrom(int, boolean)}.
+     * The searches are independent and run in parallel.
+     */
+    public short[][] distancesFrom(int[] poles, boolean[] isOutwards) {
+        short[][] result = new short[poles.length][];
+        IntStream.range(0, poles.length).parallel().forEach(p -> result[p] = distancesFrom(poles[p], isOutwards[p]));
+        return result;
+    }
+
+    private void distancesFrom(int pole, boolean isOutwards, short[] dist, int[] queue) {
+        Arrays.fill(dist, UNREACHABLE);
+        if (pole < 0 || pole >= nodeCount) return;
+
+        int[] start = isOutwards ? outStart : inStart;
+        int[] adjacent = isOutwards ? outTarget : inSource;
+
+        int head = 0, tail = 0;
+        queue[tail++] = pole;
+        dist[pole] = 0;
+
+        while (head < tail) {
+            int n = queue[head++];
+            // Distances beyond the short range are left unreachable
+            if (dist[n] == Short.MAX_VALUE) continue;
+            short next = (short) (dist[n] + 1);
+
+            for (int e = start[n]; e < start[n + 1]; e++) {
+                int n2 = adjacent[e];
+                if (dist[n2] != UNREACHABLE) continue;
+                // Mark when enqueued, so every node enters the queue once
+                dist[n2] = next;
+                queue[tail++] = n2;
+            }
+        }
+    }
+
+}
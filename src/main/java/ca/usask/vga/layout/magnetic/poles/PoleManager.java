@@ -1,30 +1,34 @@
 package ca.usask.vga.layout.magnetic.poles;
 
+import ca.usask.vga.layout.magnetic.util.PhaseEvents;
 import org.cytoscape.application.events.SetCurrentNetworkEvent;
 import org.cytoscape.application.events.SetCurrentNetworkListener;
 import org.cytoscape.model.*;
-import org.cytoscape.model.events.NetworkAddedEvent;
-import org.cytoscape.model.events.NetworkAddedListener;
+import org.cytoscape.model.events.*;
 import org.cytoscape.session.events.SessionAboutToBeLoadedEvent;
 import org.cytoscape.session.events.SessionAboutToBeLoadedListener;
 import org.cytoscape.work.undo.UndoSupport;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Used to store information about the selected poles, as well as
  * calculating the closest pole for every node. Any changes to the
  * list of poles must be submitted through this service.
  */
-public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListener, SessionAboutToBeLoadedListener {
+public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListener, SessionAboutToBeLoadedListener,
+        AddedNodesListener, RemovedNodesListener, AddedEdgesListener, RemovedEdgesListener {
 
     protected final UndoSupport undoSupport;
 
     protected Map<CyNetwork, List<CyNode>> poleList;
     protected Set<CyNode> poleIsOutwards;
 
-    protected Map<CyNetwork, Map<CyNode, Map<CyNode, Byte>>> cachedPoleDistances;
+    protected Map<CyNetwork, Map<CyNode, short[]>> cachedPoleDistances;
+    protected Map<CyNetwork, PoleDistanceEngine> distanceEngines;
+    protected Map<CyNetwork, ClosestPoleTable> closestPoleTables;
 
     // Table column names
     public static final String NAMESPACE = "Magnetic Poles", IS_POLE = "Is pole?", CLOSEST_POLE = "Closest pole",
@@ -51,6 +55,8 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
         poleList = new HashMap<>();
         poleIsOutwards = new HashSet<>();
         cachedPoleDistances = new HashMap<>();
+        distanceEngines = new ConcurrentHashMap<>();
+        closestPoleTables = new ConcurrentHashMap<>();
         changeListeners = new ArrayList<>();
         initializationListeners = new ArrayList<>();
         for (CyNetwork net : networkManager.getNetworkSet()) {
@@ -173,6 +179,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
         if (!getPoleList(network).contains(node)) {
             boolean isFirstPole = getPoleCount(network) == 0;
             getPoleList(network).add(node);
+            invalidateClosestPoles(network);
 
             // If this was the first pole added, fire the event
             if (isFirstPole) for (var l : initializationListeners) l.run();
@@ -234,7 +241,8 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      * Call {@link #updateTables(CyNetwork)} ()} to update the coloring.
      */
     public void removePole(CyNetwork network, CyNode node) {
-        getPoleList(network).remove(node);
+        if (getPoleList(network).remove(node))
+            invalidateClosestPoles(network);
     }
 
     /**
@@ -253,6 +261,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     public void removeAllPoles(CyNetwork network) {
         getPoleList(network).clear();
+        invalidateClosestPoles(network);
     }
 
     /**
@@ -262,11 +271,35 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
         return getPoleList(network).contains(node);
     }
 
+    /**
+     * Returns the distance engine of the given network, which indexes its nodes and edges.
+     * The engine is rebuilt, and the cached distances erased, after {@link #invalidateDistanceEngine(CyNetwork)}.
+     * Comparing the node and edge counts also catches the changes whose events have not been delivered yet.
+     */
+    protected PoleDistanceEngine getDistanceEngine(CyNetwork network) {
+        PoleDistanceEngine engine = distanceEngines.get(network);
+        if (engine == null || engine.isOutdated(network)) {
+            engine = PoleDistanceEngine.fromNetwork(network);
+            distanceEngines.put(network, engine);
+            invalidateNetworkCache(network);
+        }
+        return engine;
+    }
+
+    /**
+     * Erases the distance engine of the given network, so that it is rebuilt from the network on the next query.
+     * Called whenever nodes or edges are added to or removed from the network.
+     */
+    protected void invalidateDistanceEngine(CyNetwork network) {
+        if (network != null)
+            distanceEngines.remove(network);
+    }
+
     /**
      * Returns the cached shortest distances for the given network and pole.
      */
-    protected Map<CyNode, Byte> getCachedShortestDistances(CyNetwork network, CyNode pole) {
-        if (cachedPoleDistances != null && cachedPoleDistances.containsKey(network) && cachedPoleDistances.get(network).containsKey(pole))
+    protected short[] getCachedShortestDistances(CyNetwork network, CyNode pole) {
+        if (cachedPoleDistances != null && cachedPoleDistances.containsKey(network))
             return cachedPoleDistances.get(network).get(pole);
         return null;
     }
@@ -274,11 +307,11 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
     /**
      * Saves the given shortest distances for the given network and pole.
      */
-    protected void setCachedShortestDistances(CyNetwork network, CyNode pole, Map<CyNode, Byte> distances) {
+    protected void setCachedShortestDistances(CyNetwork network, CyNode pole, short[] distances) {
         if (cachedPoleDistances == null)
             cachedPoleDistances = new HashMap<>();
         if (!cachedPoleDistances.containsKey(network))
-            cachedPoleDistances.put(network, new HashMap<CyNode, Map<CyNode, Byte>>());
+            cachedPoleDistances.put(network, new HashMap<>());
         cachedPoleDistances.get(network).put(pole, distances);
     }
 
@@ -290,6 +323,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
     protected void invalidateCache(CyNetwork network, CyNode pole) {
         if (cachedPoleDistances != null && cachedPoleDistances.containsKey(network))
             cachedPoleDistances.get(network).remove(pole);
+        invalidateClosestPoles(network);
     }
 
     /**
@@ -299,89 +333,102 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
     protected void invalidateNetworkCache(CyNetwork network) {
         if (cachedPoleDistances != null && cachedPoleDistances.containsKey(network))
             cachedPoleDistances.get(network).clear();
+        invalidateClosestPoles(network);
     }
 
     /**
-     * Returns the shortest distances from the given pole to every other node in the given network.
-     * This is an expensive operation, so it is cached.
+     * Returns the shortest distances from the given pole to every other node in the given network,
+     * indexed by the network's {@link PoleDistanceEngine}. This is an expensive operation, so it is cached.
+     * On a cache miss, the distances of every other uncached pole are computed at the same time.
      * To force a new calculation, {@link #invalidateCache(CyNetwork, CyNode)} must be called.
      */
-    protected Map<CyNode, Byte> getShortestDistancesFrom(CyNetwork network, CyNode pole) {
+    protected short[] getShortestDistancesFrom(CyNetwork network, CyNode pole) {
+        PoleDistanceEngine engine = getDistanceEngine(network);
+
         // Caching
-        Map<CyNode, Byte> cache = getCachedShortestDistances(network, pole);
+        short[] cache = getCachedShortestDistances(network, pole);
         if (cache != null)
             return cache;
 
-        // RUN BFS
-        boolean isOutwards = isPoleOutwards(network, pole);
-
-        Queue<CyNode> toExplore = new ArrayDeque<>();
-        toExplore.add(pole);
-
-        Set<CyNode> visited = new HashSet<>();
-
-        Map<CyNode, Byte> shortestDistances = new HashMap<>();
-        shortestDistances.put(pole, (byte) 0);
-
-        while (!toExplore.isEmpty()) {
-
-            CyNode n = toExplore.remove();
-            visited.add(n);
-            byte dist = shortestDistances.get(n);
-
-            CyEdge.Type edgeDirection = isOutwards ? CyEdge.Type.OUTGOING : CyEdge.Type.INCOMING;
-
-            for (CyEdge e : network.getAdjacentEdgeIterable(n, edgeDirection)) {
-                CyNode n2 = e.getSource();
-                if (isOutwards) n2 = e.getTarget();
-                if (visited.contains(n2)) continue;
-                if (toExplore.contains(n2)) continue;
-                toExplore.add(n2);
-                shortestDistances.put(n2, (byte) (dist+1));
-            }
+        List<CyNode> missing = new ArrayList<>();
+        missing.add(pole);
+        for (CyNode other : getPoleList(network))
+            if (other != pole && getCachedShortestDistances(network, other) == null)
+                missing.add(other);
 
+        // RUN BFS
+        int[] sources = new int[missing.size()];
+        boolean[] isOutwards = new boolean[missing.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = engine.indexOf(missing.get(i));
+            isOutwards[i] = isPoleOutwards(network, missing.get(i));
         }
 
-        setCachedShortestDistances(network, pole, shortestDistances);
-        return shortestDistances;
+        PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.POLE_DISTANCES)
+                .setSize(engine.getNodeCount(), engine.getEdgeCount()).setCount(sources.length);
+        short[][] distances = engine.distancesFrom(sources, isOutwards);
+        phase.end();
+        for (int i = 0; i < sources.length; i++)
+            setCachedShortestDistances(network, missing.get(i), distances[i]);
+
+        return distances[0];
     }
 
     /**
      * Returns the distance from the given node to the given pole.
      */
     public int getDistanceToPole(CyNetwork network, CyNode pole, CyNode from) {
-        Map<CyNode, Byte> distances = getShortestDistancesFrom(network, pole);
-        if (!distances.containsKey(from))
+        short[] distances = getShortestDistancesFrom(network, pole);
+        int i = getDistanceEngine(network).indexOf(from);
+        if (i < 0 || distances[i] == PoleDistanceEngine.UNREACHABLE)
             return UNREACHABLE_NODE; // FAR AWAY
-        return distances.get(from);
+        return distances[i];
     }
 
     /**
-     * Returns the closest poles to the given node. If there are multiple poles with the same distance,
-     * all of them are returned. If there are no poles within reach, an empty list is returned.
+     * Erases the closest pole table of the given network, so that it is computed again on the next query.
+     * Called whenever a pole is added, removed, or its distances are invalidated.
      */
-    public Collection<CyNode> getClosestPoles(CyNetwork network, CyNode from) {
+    protected void invalidateClosestPoles(CyNetwork network) {
+        if (network != null && closestPoleTables != null)
+            closestPoleTables.remove(network);
+    }
 
-        List<CyNode> closestPoles = new ArrayList<>();
-        int closestDist = UNREACHABLE_NODE;
-        boolean equalDistance = false;
+    /**
+     * Returns the closest pole of every node of the given network. The table is computed from
+     * the pole distances the first time it is needed after a change to the poles, and reused
+     * by every query until the next change.
+     */
+    protected synchronized ClosestPoleTable getClosestPoleTable(CyNetwork network) {
+        PoleDistanceEngine engine = getDistanceEngine(network);
+        ClosestPoleTable table = closestPoleTables.get(network);
+        if (table != null)
+            return table;
 
-        for (CyNode pole : getPoleList(network)) {
+        List<CyNode> poles = getPoleList(network);
+        short[][] distances = new short[poles.size()][];
+        for (int p = 0; p < distances.length; p++)
+            distances[p] = getShortestDistancesFrom(network, poles.get(p));
 
-            int dist = getDistanceToPole(network, pole, from);
-            if (dist <= closestDist) {
-                equalDistance = dist == closestDist;
-                if (!equalDistance)
-                    closestPoles.clear();
-                closestDist = dist;
-                closestPoles.add(pole);
-            }
+        table = new ClosestPoleTable(engine, poles.toArray(new CyNode[0]), distances);
+        closestPoleTables.put(network, table);
+        return table;
+    }
 
-        }
+    /**
+     * Computes the pole distances and the closest pole table of the given network, if they are not cached yet,
+     * so that they can then be read from several threads without computing them.
+     */
+    public void prepare(CyNetwork network) {
+        getClosestPoleTable(network);
+    }
 
-        if (closestDist == UNREACHABLE_NODE)
-            closestPoles.clear();
-        return closestPoles;
+    /**
+     * Returns the closest poles to the given node. If there are multiple poles with the same distance,
+     * all of them are returned. If there are no poles within reach, an empty list is returned.
+     */
+    public Collection<CyNode> getClosestPoles(CyNetwork network, CyNode from) {
+        return getClosestPoleTable(network).getClosestPoles(from);
     }
 
     /**
@@ -389,10 +436,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      * the first one is returned. If there are no poles within reach, null is returned.
      */
     public CyNode getClosestPole(CyNetwork network, CyNode from) {
-        Collection<CyNode> closest = getClosestPoles(network, from);
-        if (closest.size() == 1)
-            return closest.iterator().next();
-        return null;
+        return getClosestPoleTable(network).getClosestPole(from);
     }
 
     /**
@@ -401,9 +445,9 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     @Nullable
     public Integer getClosestPoleDistance(CyNetwork network, CyNode from) {
-        Collection<CyNode> closest = getClosestPoles(network, from);
-        if (closest.size() > 0)
-            return getDistanceToPole(network, closest.iterator().next(), from);
+        ClosestPoleTable table = getClosestPoleTable(network);
+        if (table.getPoleCount(from) > 0)
+            return table.getDistance(from);
         return null;
     }
 
@@ -413,7 +457,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     public boolean isDisconnected(CyNetwork network, CyNode from) {
         if (from == null) return true;
-        return getClosestPoles(network, from).size() == 0;
+        return getClosestPoleTable(network).getPoleCount(from) == 0;
     }
 
     /**
@@ -421,7 +465,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     public boolean isClosestToMultiple(CyNetwork network, CyNode from) {
         if (from == null) return false;
-        return getClosestPoles(network, from).size() > 1;
+        return getClosestPoleTable(network).getPoleCount(from) > 1;
     }
 
     /**
@@ -429,7 +473,7 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     public boolean isClosestToOne(CyNetwork network, CyNode from) {
         if (from == null) return false;
-        return getClosestPoles(network, from).size() == 1;
+        return getClosestPoleTable(network).getPoleCount(from) == 1;
     }
 
     /**
@@ -447,9 +491,8 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      * If there are multiple poles, or if there are no poles, null is returned.
      */
     public CyNode getAssignedPole(CyNetwork network, CyEdge edge) {
-        Collection<CyNode> closest = getAssignedPoles(network, edge);
         if (isClosestToOne(network, edge))
-            return closest.iterator().next();
+            return getClosestPole(network, edge.getSource());
         return null;
     }
 
@@ -484,7 +527,8 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     public boolean isDisconnected(CyNetwork network, CyEdge edge) {
         if (edge == null) return true;
-        return isDisconnected(network, edge.getTarget()) || isDisconnected(network, edge.getSource());
+        ClosestPoleTable table = getClosestPoleTable(network);
+        return table.getPoleCount(edge.getTarget()) == 0 || table.getPoleCount(edge.getSource()) == 0;
     }
 
     /**
@@ -493,11 +537,13 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      */
     public boolean isClosestToMultiple(CyNetwork network, CyEdge edge) {
         if (edge == null) return false;
-        if (isDisconnected(network, edge))
+        ClosestPoleTable table = getClosestPoleTable(network);
+        int sourceCount = table.getPoleCount(edge.getSource()), targetCount = table.getPoleCount(edge.getTarget());
+        if (sourceCount == 0 || targetCount == 0)
             return false;
-        if (isClosestToMultiple(network, edge.getSource()) || isClosestToMultiple(network, edge.getTarget()))
+        if (sourceCount > 1 || targetCount > 1)
             return true;
-        return getClosestPole(network, edge.getSource()) != getClosestPole(network, edge.getTarget());
+        return table.getClosestPole(edge.getSource()) != table.getClosestPole(edge.getTarget());
     }
 
     /**
@@ -525,6 +571,8 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
      * After the update, the table may be saved to the session file and reloaded later.
      */
     public void updateTables(CyNetwork network) {
+        PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.POLE_TABLES)
+                .setSize(network.getNodeCount(), network.getEdgeCount()).setCount(getPoleCount(network));
 
         // Network pole lists
         CyTable networkTable = network.getDefaultNetworkTable();
@@ -617,6 +665,8 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
             }
         }
 
+        phase.end();
+
         tableInitialized = true;
         for (var l : changeListeners) l.run();
     }
@@ -632,6 +682,38 @@ public class PoleManager implements NetworkAddedListener, SetCurrentNetworkListe
         readPoleListFromTable(e.getNetwork());
     }
 
+    /**
+     * When nodes are added, the distance engine no longer matches the network.
+     */
+    @Override
+    public void handleEvent(AddedNodesEvent e) {
+        invalidateDistanceEngine(e.getSource());
+    }
+
+    /**
+     * When nodes are removed, the distance engine no longer matches the network.
+     */
+    @Override
+    public void handleEvent(RemovedNodesEvent e) {
+        invalidateDistanceEngine(e.getSource());
+    }
+
+    /**
+     * When edges are added, the distance engine no longer matches the network.
+     */
+    @Override
+    public void handleEvent(AddedEdgesEvent e) {
+        invalidateDistanceEngine(e.getSource());
+    }
+
+    /**
+     * When edges are removed, the distance engine no longer matches the network.
+     */
+    @Override
+    public void handleEvent(RemovedEdgesEvent e) {
+        invalidateDistanceEngine(e.getSource());
+    }
+
     /**
      * When the current network is changed, update the pole table columns of the network,
      * to make sure the colors and other attributes reflect the new pole positions.
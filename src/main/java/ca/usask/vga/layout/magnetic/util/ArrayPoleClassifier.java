@@ -0,0 +1,199 @@
+package ca.usask.vga.layout.magnetic.util;
+
+import org.cytoscape.model.CyEdge;
+import prefuse.util.force.ForceItem;
+import prefuse.util.force.ForceSimulator;
+import prefuse.util.force.Spring;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An implementation of the {@link PoleClassifier} interface that stores the answers of another
+ * classifier in arrays indexed by the {@link ForceItem#index} and {@link Spring#index} of a simulation.
+ * Call {@link #snapshot(ForceSimulator)} once the items and springs have been added to the simulation;
+ * the forces then only read the arrays. Until then, and for the items and springs that are not part of
+ * the snapshot, the queries are passed on to the source classifier.
+ */
+public class ArrayPoleClassifier implements PoleClassifier {
+
+    private static final byte DISCONNECTED = 0, CLOSEST_TO_ONE = 1, CLOSEST_TO_MULTIPLE = 2;
+
+    private final PoleClassifier source;
+
+    private ForceItem[] items = new ForceItem[0];
+    private boolean[] isPole, isOutwards;
+    private ForceItem[] closestPole;
+    private int[] closestPoleDistance;
+    private byte[] itemState;
+
+    private Spring[] springs = new Spring[0];
+    private ForceItem[] springPole;
+    private byte[] springState;
+
+    private List<ForceItem> poleList;
+
+    public ArrayPoleClassifier(PoleClassifier source) {
+        this.source = source;
+    }
+
+    /**
+     * Stores the answers of the source classifier for every item and spring of the given simulation.
+     * Must be called again if items or springs are added to or removed from the simulation.
+     */
+    public void snapshot(ForceSimulator m_fsim) {
+        int n = m_fsim.getItemCount();
+        items = new ForceItem[n];
+        isPole = new boolean[n];
+        isOutwards = new boolean[n];
+        closestPole = new ForceItem[n];
+        closestPoleDistance = new int[n];
+        itemState = new byte[n];
+
+        Iterator<ForceItem> iter = m_fsim.getItems();
+        while (iter.hasNext()) {
+            ForceItem item = iter.next();
+            items[item.index] = item;
+        }
+
+        for (int i = 0; i < n; i++) {
+            ForceItem item = items[i];
+            isPole[i] = source.isPole(item);
+            isOutwards[i] = isPole[i] && source.isPoleOutwards(item);
+            closestPole[i] = source.closestPole(item);
+            closestPoleDistance[i] = source.closestPoleDistance(item);
+            itemState[i] = source.isDisconnected(item) ? DISCONNECTED :
+                    source.isClosestToMultiple(item) ? CLOSEST_TO_MULTIPLE : CLOSEST_TO_ONE;
+        }
+
+        int m = m_fsim.getSpringCount();
+        springs = new Spring[m];
+        springPole = new ForceItem[m];
+        springState = new byte[m];
+
+        Iterator<Spring> siter = m_fsim.getSprings();
+        while (siter.hasNext()) {
+            Spring s = siter.next();
+            springs[s.index] = s;
+        }
+
+        for (int i = 0; i < m; i++) {
+            Spring s = springs[i];
+            springPole[i] = source.poleOf(s);
+            springState[i] = source.isDisconnected(s) ? DISCONNECTED :
+                    source.isClosestToMultiple(s) ? CLOSEST_TO_MULTIPLE : CLOSEST_TO_ONE;
+        }
+
+        poleList = new ArrayList<>();
+        for (ForceItem pole : source.getPoleList())
+            poleList.add(pole);
+    }
+
+    private int indexOf(ForceItem item) {
+        if (item == null || item.index < 0 || item.index >= items.length || items[item.index] != item)
+            return -1;
+        return item.index;
+    }
+
+    private int indexOf(Spring spring) {
+        if (spring == null || spring.index < 0 || spring.index >= springs.length || springs[spring.index] != spring)
+            return -1;
+        return spring.index;
+    }
+
+    @Override
+    public Iterable<ForceItem> getPoleList() {
+        if (poleList == null) return source.getPoleList();
+        return poleList;
+    }
+
+    @Override
+    public Iterable<ForceItem> getPoleListSorted(CyEdge.Type edgeType) {
+        return source.getPoleListSorted(edgeType);
+    }
+
+    @Override
+    public int getPoleListSize() {
+        if (poleList == null) return source.getPoleListSize();
+        return poleList.size();
+    }
+
+    @Override
+    public boolean isPole(ForceItem item) {
+        int i = indexOf(item);
+        if (i < 0) return source.isPole(item);
+        return isPole[i];
+    }
+
+    @Override
+    public ForceItem closestPole(ForceItem item) {
+        int i = indexOf(item);
+        if (i < 0) return source.closestPole(item);
+        return closestPole[i];
+    }
+
+    @Override
+    public int closestPoleDistance(ForceItem item) {
+        int i = indexOf(item);
+        if (i < 0) return source.closestPoleDistance(item);
+        return closestPoleDistance[i];
+    }
+
+    @Override
+    public boolean isDisconnected(ForceItem item) {
+        int i = indexOf(item);
+        if (i < 0) return source.isDisconnected(item);
+        return itemState[i] == DISCONNECTED;
+    }
+
+    @Override
+    public boolean isClosestToMultiple(ForceItem item) {
+        int i = indexOf(item);
+        if (i < 0) return source.isClosestToMultiple(item);
+        return itemState[i] == CLOSEST_TO_MULTIPLE;
+    }
+
+    @Override
+    public boolean isClosestToOne(ForceItem item) {
+        int i = indexOf(item);
+        if (i < 0) return source.isClosestToOne(item);
+        return itemState[i] == CLOSEST_TO_ONE;
+    }
+
+    @Override
+    public ForceItem poleOf(Spring spring) {
+        int i = indexOf(spring);
+        if (i < 0) return source.poleOf(spring);
+        return springPole[i];
+    }
+
+    @Override
+    public boolean isDisconnected(Spring spring) {
+        int i = indexOf(spring);
+        if (i < 0) return source.isDisconnected(spring);
+        return springState[i] == DISCONNECTED;
+    }
+
+    @Override
+    public boolean isClosestToMultiple(Spring spring) {
+        int i = indexOf(spring);
+        if (i < 0) return source.isClosestToMultiple(spring);
+        return springState[i] == CLOSEST_TO_MULTIPLE;
+    }
+
+    @Override
+    public boolean isClosestToOne(Spring spring) {
+        int i = indexOf(spring);
+        if (i < 0) return source.isClosestToOne(spring);
+        return springState[i] == CLOSEST_TO_ONE;
+    }
+
+    @Override
+    public boolean isPoleOutwards(ForceItem pole) {
+        int i = indexOf(pole);
+        if (i < 0) return source.isPoleOutwards(pole);
+        return isOutwards[i];
+    }
+
+}
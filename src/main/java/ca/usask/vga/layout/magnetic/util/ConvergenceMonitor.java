@@ -0,0 +1,117 @@
+package ca.usask.vga.layout.magnetic.util;
+
+import prefuse.util.force.ForceItem;
+import prefuse.util.force.ForceSimulator;
+
+import java.util.Iterator;
+
+/**
+ * Detects when a {@link ForceSimulator} layout has settled. After every iteration,
+ * the average kinetic energy of the items and the largest item displacement are
+ * compared to their tolerance, and the layout is considered converged once both
+ * stayed under it for a number of consecutive iterations.
+ */
+public class ConvergenceMonitor {
+
+    private final float displacementTolerance;
+    private final float energyTolerance;
+    private final int window;
+
+    private float[] previous = new float[0];
+    private int iterations, settledIterations;
+    private float maxDisplacement;
+    private double kineticEnergy;
+    private boolean converged;
+
+    /**
+     * @param displacementTolerance largest item displacement in one iteration
+     * @param energyTolerance largest average kinetic energy of the items
+     * @param window number of consecutive iterations under both tolerances
+     */
+    public ConvergenceMonitor(float displacementTolerance, float energyTolerance, int window) {
+        this.displacementTolerance = displacementTolerance;
+        this.energyTolerance = energyTolerance;
+        this.window = window;
+    }
+
+    /**
+     * Records the initial item locations, to be called before the first iteration.
+     */
+    public void start(ForceSimulator m_fsim) {
+        iterations = 0;
+        settledIterations = 0;
+        converged = false;
+
+        int n = m_fsim.getItemCount();
+        if (previous.length < 2 * n)
+            previous = new float[2 * n];
+
+        Iterator<ForceItem> iter = m_fsim.getItems();
+        for (int i = 0; iter.hasNext(); i++) {
+            ForceItem item = iter.next();
+            previous[2 * i] = item.location[0];
+            previous[2 * i + 1] = item.location[1];
+        }
+    }
+
+    /**
+     * Measures the iteration that just ran.
+     * @return true if the layout converged and can be stopped
+     */
+    public boolean update(ForceSimulator m_fsim) {
+        float maxSq = 0;
+        double energy = 0;
+        int n = 0;
+
+        Iterator<ForceItem> iter = m_fsim.getItems();
+        for (; iter.hasNext(); n++) {
+            ForceItem item = iter.next();
+            float dx = item.location[0] - previous[2 * n];
+            float dy = item.location[1] - previous[2 * n + 1];
+            maxSq = Math.max(maxSq, dx * dx + dy * dy);
+            energy += 0.5 * item.mass * (item.velocity[0] * item.velocity[0] + item.velocity[1] * item.velocity[1]);
+            previous[2 * n] = item.location[0];
+            previous[2 * n + 1] = item.location[1];
+        }
+
+        iterations++;
+        maxDisplacement = (float) Math.sqrt(maxSq);
+        kineticEnergy = n == 0 ? 0 : energy / n;
+
+        if (maxDisplacement <= displacementTolerance && kineticEnergy <= energyTolerance)
+            settledIterations++;
+        else
+            settledIterations = 0;
+
+        converged = settledIterations >= window;
+        return converged;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public float getMaxDisplacement() {
+        return maxDisplacement;
+    }
+
+    public double getKineticEnergy() {
+        return kineticEnergy;
+    }
+
+    /**
+     * @return a description of why the layout stopped after the last iteration
+     */
+    public String getStopReason() {
+        if (converged)
+            return String.format("Converged after %d iterations: max displacement %.3g, kinetic energy %.3g " +
+                    "for %d iterations", iterations, maxDisplacement, kineticEnergy, settledIterations);
+        return String.format("Stopped after %d iterations: max displacement %.3g, kinetic energy %.3g",
+                iterations, maxDisplacement, kineticEnergy);
+    }
+
+}
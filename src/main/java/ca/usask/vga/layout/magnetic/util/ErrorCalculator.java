@@ -7,10 +7,7 @@ import prefuse.util.force.ForceItem;
 import prefuse.util.force.ForceSimulator;
 import prefuse.util.force.Spring;
 
-import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
-import java.util.function.Function;
 
 /**
  * Used to calculate alignment statistics and error for a {@link ForceSimulator} layout.
@@ -21,65 +18,114 @@ public class ErrorCalculator {
     private final ForceSimulator m_fsim;
     private final MagneticForce magneticForce;
 
-    private static final int NODE_X = 0, NODE_Y = 1, NODE_FORCE = 2, NODE_VELOCITY = 3;
-    private static final int EDGE_MISALIGNMENT = 0;
+    private final Statistics nodeX, nodeY, nodeForce, nodeVelocity;
+    private final Statistics edgeMisalignment;
 
-    private Statistics<ForceItem> nodeStat;
-    private Statistics<Spring> edgeStat;
+    // misalignment of every edge, from the last recalculation
+    private float[] misalignments = new float[0];
 
     public ErrorCalculator(ForceSimulator m_fsim, @Nullable MagneticForce magneticForce) {
         this.m_fsim = m_fsim;
         this.magneticForce = magneticForce;
-        nodeStat = new Statistics<>(4);
-        edgeStat = new Statistics<>(1);
-    }
+        nodeX = new Statistics();
+        nodeY = new Statistics();
+        nodeForce = new Statistics();
+        nodeVelocity = new Statistics();
+        edgeMisalignment = new Statistics();
+    }
+
+    /**
+     * Streaming statistics of one measure, updated one value at a time
+     * with Welford's algorithm for the mean and variance.
+     */
+    protected static class Statistics {
+        int count;
+        double mean, m2;
+        float min, max;
+
+        void clear() {
+            count = 0;
+            mean = 0;
+            m2 = 0;
+            min = 0;
+            max = 0;
+        }
 
-    protected static class Statistics<T> {
-        public Statistics(int count, float[] min, float[] max, float[] mean, float[] deviation) {
-            this.count = count;
-            this.min = min;
-            this.max = max;
-            this.mean = mean;
-            this.deviation = deviation;
+        void add(float val) {
+            count++;
+            if (count == 1) {
+                min = val;
+                max = val;
+            } else {
+                min = Math.min(min, val);
+                max = Math.max(max, val);
+            }
+            double delta = val - mean;
+            mean += delta / count;
+            m2 += delta * (val - mean);
         }
-        public Statistics(int measure_total) {
-            this.count = 0;
-            min = new float[measure_total];
-            max = new float[measure_total];
-            mean = new float[measure_total];
-            deviation = new float[measure_total];
+
+        float getMean() {
+            return count == 0 ? Float.NaN : (float) mean;
+        }
+
+        float getDeviation() {
+            return count == 0 ? Float.NaN : (float) Math.sqrt(m2 / count);
         }
-        int count;
-        float[] min, max, mean, deviation;
     }
 
+    /**
+     * Measures the current state of the simulation, in one pass over the items
+     * and one pass over the springs.
+     */
     public void recalculate() {
-        List<Function<ForceItem, Float>> nodeFunc = new ArrayList<>();
-        nodeFunc.add(item -> item.location[0]);
-        nodeFunc.add(item -> item.location[1]);
-        nodeFunc.add(item -> Vector.convert(item.force).magnitude());
-        nodeFunc.add(item -> Vector.convert(item.velocity).magnitude());
-        nodeStat = calculateStatistics(m_fsim.getItems(), nodeFunc);
+        nodeX.clear();
+        nodeY.clear();
+        nodeForce.clear();
+        nodeVelocity.clear();
+        edgeMisalignment.clear();
+
+        Iterator<ForceItem> items = m_fsim.getItems();
+        while (items.hasNext()) {
+            ForceItem item = items.next();
+            nodeX.add(item.location[0]);
+            nodeY.add(item.location[1]);
+            nodeForce.add(Vector.magnitude(item.force[0], item.force[1]));
+            nodeVelocity.add(Vector.magnitude(item.velocity[0], item.velocity[1]));
+        }
+
+        int springCount = m_fsim.getSpringCount();
+        if (misalignments.length != springCount)
+            misalignments = new float[springCount];
 
-        List<Function<Spring, Float>> edgeFunc = new ArrayList<>();
-        if (magneticForce != null)
-            edgeFunc.add(magneticForce::getEdgeMisalignment);
-        else
-            edgeFunc.add(s -> 0f);
-        edgeStat = calculateStatistics(m_fsim.getSprings(), edgeFunc);
+        Iterator<Spring> springs = m_fsim.getSprings();
+        for (int i = 0; springs.hasNext(); i++) {
+            Spring s = springs.next();
+            float val = magneticForce != null ? magneticForce.getEdgeMisalignment(s) : 0f;
+            misalignments[i] = val;
+            edgeMisalignment.add(val);
+        }
     }
 
     public long totalEdges() {
-        return edgeStat.count;
+        return edgeMisalignment.count;
     }
 
     public long totalNodes() {
-        return nodeStat.count;
+        return nodeX.count;
     }
 
+    /**
+     * Returns the number of edges misaligned by at least the given angle at the last recalculation.
+     */
     public long misalignedEdges(float threshold) {
         if (magneticForce == null) return 0;
-        return countIf(m_fsim.getSprings(), (s) -> magneticForce.getEdgeMisalignment(s) >= threshold);
+        long total = 0;
+        for (int i = 0; i < edgeMisalignment.count; i++) {
+            if (misalignments[i] >= threshold)
+                total++;
+        }
+        return total;
     }
 
     public float percentOfMisaligned(float threshold) {
@@ -87,27 +133,27 @@ public class ErrorCalculator {
     }
 
     public float misalignmentMean() {
-        return edgeStat.mean[EDGE_MISALIGNMENT];
+        return edgeMisalignment.getMean();
     }
 
     public float misalignmentSD() {
-        return edgeStat.deviation[EDGE_MISALIGNMENT];
+        return edgeMisalignment.getDeviation();
     }
 
     public float forceMean() {
-        return nodeStat.mean[NODE_FORCE];
+        return nodeForce.getMean();
     }
 
     public float forceSD() {
-        return nodeStat.deviation[NODE_FORCE];
+        return nodeForce.getDeviation();
     }
 
     public float velocityMean() {
-        return nodeStat.mean[NODE_VELOCITY];
+        return nodeVelocity.getMean();
     }
 
     public float velocitySD() {
-        return nodeStat.deviation[NODE_VELOCITY];
+        return nodeVelocity.getDeviation();
     }
 
     public float degrees(float radians) {
@@ -154,30 +200,30 @@ public class ErrorCalculator {
     }
 
     public float minX() {
-        return nodeStat.min[NODE_X];
+        return nodeX.min;
     }
     public float minY() {
-        return nodeStat.min[NODE_Y];
+        return nodeY.min;
     }
     public float maxX() {
-        return nodeStat.max[NODE_X];
+        return nodeX.max;
     }
     public float maxY() {
-        return nodeStat.max[NODE_Y];
+        return nodeY.max;
     }
 
     public float meanX() {
-        return nodeStat.mean[NODE_X];
+        return nodeX.getMean();
     }
     public float meanY() {
-        return nodeStat.mean[NODE_Y];
+        return nodeY.getMean();
     }
 
     public float sdX() {
-        return nodeStat.deviation[NODE_X];
+        return nodeX.getDeviation();
     }
     public float sdY() {
-        return nodeStat.deviation[NODE_Y];
+        return nodeY.getDeviation();
     }
 
     public float sdXY() {
@@ -222,89 +268,4 @@ public class ErrorCalculator {
         //return (1 / (current * desired)) *  (current - desired) * (current - desired);
     }
 
-    public <T> Statistics<T> calculateStatistics(Iterator<T> iterator, List<Function<T, Float>> measures) {
-        int measures_length = measures.size();
-        int count = 0;
-        float[] total = new float[measures_length];
-        float[] total_squared = new float[measures_length];
-        float[] min = new float[measures_length], max = new float[measures_length];
-        while (iterator.hasNext()) {
-            T t = iterator.next();
-            count++;
-            for (int i = 0; i < measures_length; i++) {
-                float val = measures.get(i).apply(t);
-                total[i] += val;
-                total_squared[i] += val*val;
-                min[i] = Math.min(min[i], val);
-                max[i] = Math.max(max[i], val);
-                if (count == 1) {
-                    min[i] = val;
-                    max[i] = val;
-                }
-            }
-        }
-        float[] mean = new float[measures_length];
-        float[] deviation = new float[measures_length];
-        for (int i = 0; i < measures_length; i++) {
-            mean[i] = total[i] / count;
-            deviation[i] = (float) Math.sqrt(total_squared[i] / count - mean[i] * mean[i]);
-        }
-        return new Statistics<>(count, min, max, mean, deviation);
-    }
-
-    public <T> long count(Iterator<T> iterator) {
-        int total = 0;
-        while (iterator.hasNext()) {
-            iterator.next();
-            total++;
-        }
-        return total;
-    }
-
-    public <T> long countIf(Iterator<T> iterator, Function<T, Boolean> condition) {
-        int total = 0;
-        while (iterator.hasNext()) {
-            if (condition.apply(iterator.next()))
-                total++;
-        }
-        return total;
-    }
-
-    public <T> float mean(Iterator<T> iterator, Function<T, Float> valueOf) {
-        float sum = 0;
-        int total = 0;
-        while (iterator.hasNext()) {
-            sum += valueOf.apply(iterator.next());
-            total++;
-        }
-        return sum / total;
-    }
-
-    public <T> float sd(Iterator<T> iterator, Function<T, Float> valueOf, float mean) {
-        float sd = 0;
-        int total = 0;
-        while (iterator.hasNext()) {
-            float val = valueOf.apply(iterator.next());
-            sd += (val - mean) * (val - mean);
-            total++;
-        }
-        return (float) Math.sqrt(sd / total);
-    }
-
-    public <T> float min(Iterator<T> iterator, Function<T, Float> valueOf) {
-        float minVal = Float.POSITIVE_INFINITY;
-        while (iterator.hasNext()) {
-            minVal = Math.min(minVal, valueOf.apply(iterator.next()));
-        }
-        return minVal;
-    }
-
-    public <T> float max(Iterator<T> iterator, Function<T, Float> valueOf) {
-        float maxVal = Float.NEGATIVE_INFINITY;
-        while (iterator.hasNext()) {
-            maxVal = Math.max(maxVal, valueOf.apply(iterator.next()));
-        }
-        return maxVal;
-    }
-
 }
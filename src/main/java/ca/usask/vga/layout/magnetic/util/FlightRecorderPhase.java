@@ -0,0 +1,112 @@
+package ca.usask.vga.layout.magnetic.util;
+
+import jdk.jfr.*;
+
+/**
+ * A phase recorded as a JFR event. Only loaded by {@link PhaseEvents} once the
+ * <code>jdk.jfr</code> package is known to be available.
+ */
+class FlightRecorderPhase extends PhaseEvents.Phase {
+
+    private final PhaseEvent event;
+
+    private FlightRecorderPhase(PhaseEvent event) {
+        this.event = event;
+    }
+
+    /**
+     * @return the started phase, or null if the events of this type are not recorded
+     */
+    static FlightRecorderPhase begin(PhaseEvents.Type type) {
+        PhaseEvent event = newEvent(type);
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return new FlightRecorderPhase(event);
+    }
+
+    private static PhaseEvent newEvent(PhaseEvents.Type type) {
+        switch (type) {
+            case LAYOUT_PARTITION: return new LayoutPartitionEvent();
+            case AUTO_LAYOUT_TRIAL: return new AutoLayoutTrialEvent();
+            case POLE_DISTANCES: return new PoleDistancesEvent();
+            case POLE_TABLES: return new PoleTablesEvent();
+            case JAR_IMPORT: return new JarImportEvent();
+            case SOURCE_IMPORT: return new SourceImportEvent();
+            default: return new GitMetadataEvent();
+        }
+    }
+
+    @Override
+    public PhaseEvents.Phase setSize(long nodes, long edges) {
+        event.nodes = nodes;
+        event.edges = edges;
+        return this;
+    }
+
+    @Override
+    public PhaseEvents.Phase setCount(long count) {
+        event.count = count;
+        return this;
+    }
+
+    @Override
+    public PhaseEvents.Phase setDetail(String detail) {
+        event.detail = detail;
+        return this;
+    }
+
+    @Override
+    public void end() {
+        event.commit();
+    }
+
+    @Category({"CodeNetVis"})
+    @StackTrace(false)
+    abstract static class PhaseEvent extends Event {
+        @Label("Nodes")
+        long nodes;
+        @Label("Edges")
+        long edges;
+        @Label("Count")
+        long count;
+        @Label("Detail")
+        String detail;
+    }
+
+    @Name("ca.usask.vga.LayoutPartition")
+    @Label("Layout Partition")
+    @Description("Iterations of the force simulation of a partition; the count is the number of iterations run")
+    static class LayoutPartitionEvent extends PhaseEvent {}
+
+    @Name("ca.usask.vga.AutoLayoutTrial")
+    @Label("Auto Layout Trial")
+    @Description("Trial simulation of auto layout; the count is the number of iterations run")
+    static class AutoLayoutTrialEvent extends PhaseEvent {}
+
+    @Name("ca.usask.vga.PoleDistances")
+    @Label("Pole Distances")
+    @Description("Breadth-first search from the poles of a network; the count is the number of poles searched")
+    static class PoleDistancesEvent extends PhaseEvent {}
+
+    @Name("ca.usask.vga.PoleTables")
+    @Label("Pole Tables Update")
+    @Description("Update of the pole columns of a network; the count is the number of poles")
+    static class PoleTablesEvent extends PhaseEvent {}
+
+    @Name("ca.usask.vga.JarImport")
+    @Label("JAR Import")
+    @Description("Parsing of the classes of a JAR file; the count is the number of class files")
+    static class JarImportEvent extends PhaseEvent {}
+
+    @Name("ca.usask.vga.SourceImport")
+    @Label("Source Import")
+    @Description("Parsing of a Java source folder; the count is the number of source files")
+    static class SourceImportEvent extends PhaseEvent {}
+
+    @Name("ca.usask.vga.GitMetadata")
+    @Label("Git Metadata")
+    @Description("Loading of the Git metadata of the nodes of a network; the count is the number of nodes processed")
+    static class GitMetadataEvent extends PhaseEvent {}
+
+}
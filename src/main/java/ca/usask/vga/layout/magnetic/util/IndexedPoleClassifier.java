@@ -0,0 +1,208 @@
+package ca.usask.vga.layout.magnetic.util;
+
+import ca.usask.vga.layout.magnetic.poles.ClosestPoleTable;
+import ca.usask.vga.layout.magnetic.poles.PoleDistanceEngine;
+import ca.usask.vga.layout.magnetic.poles.PoleManager;
+import org.cytoscape.model.CyEdge;
+import prefuse.util.force.ForceItem;
+import prefuse.util.force.Spring;
+
+import java.util.*;
+
+/**
+ * An implementation of the {@link PoleClassifier} interface for graphs that are only known by
+ * the indices of their nodes and edges, without a Cytoscape network or a {@link PoleManager}.
+ * The closest poles are read from a {@link ClosestPoleTable} of a {@link PoleDistanceEngine},
+ * like the PoleManager does for a network. Used to run the forces outside of Cytoscape, for benchmarks and headless layouts.
+ */
+public class IndexedPoleClassifier implements PoleClassifier {
+
+    private final PoleDistanceEngine engine;
+    private final int[] edgeSource, edgeTarget;
+
+    private final int[] poles;
+    private final boolean[] isPole, isOutwards;
+
+    private final ClosestPoleTable table;
+
+    private final Map<ForceItem, Integer> nodeMap;
+    private final Map<Spring, Integer> edgeMap;
+    private final ForceItem[] nodeItems;
+
+    /**
+     * @param engine the engine of the graph
+     * @param poles the indices of the pole nodes
+     * @param poleIsOutwards the direction of every pole, in the same order
+     * @param edgeSource the source node of every edge
+     * @param edgeTarget the target node of every edge
+     */
+    public IndexedPoleClassifier(PoleDistanceEngine engine, int[] poles, boolean[] poleIsOutwards,
+                                 int[] edgeSource, int[] edgeTarget) {
+        this.engine = engine;
+        this.poles = poles;
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+
+        int n = engine.getNodeCount();
+        isPole = new boolean[n];
+        isOutwards = new boolean[n];
+        for (int p = 0; p < poles.length; p++) {
+            isPole[poles[p]] = true;
+            isOutwards[poles[p]] = poleIsOutwards[p];
+        }
+
+        table = new ClosestPoleTable(engine, engine.distancesFrom(poles, poleIsOutwards));
+
+        nodeMap = new HashMap<>();
+        edgeMap = new HashMap<>();
+        nodeItems = new ForceItem[n];
+    }
+
+    public void mapNode(ForceItem item, int node) {
+        nodeMap.put(item, node);
+        nodeItems[node] = item;
+    }
+
+    public void mapEdge(Spring spring, int edge) {
+        edgeMap.put(spring, edge);
+    }
+
+    /**
+     * Removes the items and springs of the last simulation, so that the classifier can be used for the next one.
+     */
+    public void clearMaps() {
+        nodeMap.clear();
+        edgeMap.clear();
+        Arrays.fill(nodeItems, null);
+    }
+
+    private int nodeOf(ForceItem item) {
+        Integer i = nodeMap.get(item);
+        return i == null ? -1 : i;
+    }
+
+    private int edgeOf(Spring spring) {
+        Integer i = edgeMap.get(spring);
+        return i == null ? -1 : i;
+    }
+
+    private int getPoleCount(int node) {
+        return table.getPoleCount(node);
+    }
+
+    @Override
+    public Iterable<ForceItem> getPoleList() {
+        List<ForceItem> items = new ArrayList<>();
+        for (int pole : poles)
+            if (nodeItems[pole] != null)
+                items.add(nodeItems[pole]);
+        return items;
+    }
+
+    @Override
+    public Iterable<ForceItem> getPoleListSorted(CyEdge.Type edgeType) {
+        // Highest degree first, as ExtraTasks.getByDegreeComparator, with ties broken by index
+        List<Integer> sorted = new ArrayList<>();
+        for (int pole : poles)
+            sorted.add(pole);
+        sorted.sort((a, b) -> {
+            int ret = getDegree(b, edgeType) - getDegree(a, edgeType);
+            return ret != 0 ? ret : b - a;
+        });
+
+        List<ForceItem> items = new ArrayList<>();
+        for (int pole : sorted)
+            if (nodeItems[pole] != null)
+                items.add(nodeItems[pole]);
+        return items;
+    }
+
+    private int getDegree(int node, CyEdge.Type edgeType) {
+        switch (edgeType) {
+            case INCOMING: return engine.getInDegree(node);
+            case OUTGOING: return engine.getOutDegree(node);
+            default: return engine.getInDegree(node) + engine.getOutDegree(node);
+        }
+    }
+
+    @Override
+    public int getPoleListSize() {
+        int count = 0;
+        for (int pole : poles)
+            if (nodeItems[pole] != null) count++;
+        return count;
+    }
+
+    @Override
+    public boolean isPole(ForceItem item) {
+        int i = nodeOf(item);
+        return i >= 0 && isPole[i];
+    }
+
+    @Override
+    public ForceItem closestPole(ForceItem item) {
+        int p = table.getClosestPoleIndex(nodeOf(item));
+        if (p < 0) return null;
+        return nodeItems[poles[p]];
+    }
+
+    @Override
+    public int closestPoleDistance(ForceItem item) {
+        int i = nodeOf(item);
+        if (getPoleCount(i) == 0) return PoleManager.UNREACHABLE_NODE;
+        return table.getDistance(i);
+    }
+
+    @Override
+    public boolean isDisconnected(ForceItem item) {
+        return getPoleCount(nodeOf(item)) == 0;
+    }
+
+    @Override
+    public boolean isClosestToMultiple(ForceItem item) {
+        return getPoleCount(nodeOf(item)) > 1;
+    }
+
+    @Override
+    public boolean isClosestToOne(ForceItem item) {
+        return getPoleCount(nodeOf(item)) == 1;
+    }
+
+    @Override
+    public ForceItem poleOf(Spring spring) {
+        if (!isClosestToOne(spring)) return null;
+        return nodeItems[poles[table.getClosestPoleIndex(edgeSource[edgeOf(spring)])]];
+    }
+
+    @Override
+    public boolean isDisconnected(Spring spring) {
+        int e = edgeOf(spring);
+        if (e < 0) return true;
+        return getPoleCount(edgeSource[e]) == 0 || getPoleCount(edgeTarget[e]) == 0;
+    }
+
+    @Override
+    public boolean isClosestToMultiple(Spring spring) {
+        int e = edgeOf(spring);
+        if (e < 0) return false;
+        int source = edgeSource[e], target = edgeTarget[e];
+        int sourceCount = getPoleCount(source), targetCount = getPoleCount(target);
+        if (sourceCount == 0 || targetCount == 0)
+            return false;
+        if (sourceCount > 1 || targetCount > 1)
+            return true;
+        return table.getClosestPoleIndex(source) != table.getClosestPoleIndex(target);
+    }
+
+    @Override
+    public boolean isClosestToOne(Spring spring) {
+        return !isDisconnected(spring) && !isClosestToMultiple(spring);
+    }
+
+    @Override
+    public boolean isPoleOutwards(ForceItem pole) {
+        int i = nodeOf(pole);
+        return i >= 0 && isOutwards[i];
+    }
+
+}
@@ -0,0 +1,84 @@
+package ca.usask.vga.layout.magnetic.util;
+
+/**
+ * Marks the slow phases of the app, such as the layout of a partition or the import of a project,
+ * as Java Flight Recorder events, so that recordings attribute the time to these phases directly.
+ * Every event has the duration of the phase, its size in nodes and edges, a count and a detail,
+ * whose meaning depends on the {@link Type}.
+ * <p>
+ * JFR is only used if the <code>jdk.jfr</code> package can be loaded, which is optional in OSGi,
+ * and the events are only created while a recording is running. Otherwise, every phase is a
+ * shared object that does nothing.
+ * <pre>
+ * PhaseEvents.Phase phase = PhaseEvents.begin(PhaseEvents.Type.POLE_TABLES).setSize(nodes, edges);
+ * ...
+ * phase.end();
+ * </pre>
+ */
+public class PhaseEvents {
+
+    public enum Type {
+        /** The iterations of the simulation of a layout partition. Count: iterations run. */
+        LAYOUT_PARTITION,
+        /** A trial simulation of auto layout. Count: iterations run. Detail: combination and score. */
+        AUTO_LAYOUT_TRIAL,
+        /** The shortest distances from the poles of a network. Count: poles searched. */
+        POLE_DISTANCES,
+        /** The update of the pole columns of a network. Count: poles. */
+        POLE_TABLES,
+        /** The parsing of a JAR file. Count: class files. Detail: file name. */
+        JAR_IMPORT,
+        /** The parsing of a source folder. Count: source files. Detail: folder. */
+        SOURCE_IMPORT,
+        /** The loading of the Git metadata of a network. Count: nodes processed. */
+        GIT_METADATA
+    }
+
+    /**
+     * A phase in progress, committed as an event when it ends. The setters return the phase,
+     * so they can be chained. A phase must only be used by the thread that started it.
+     */
+    public static class Phase {
+
+        public Phase setSize(long nodes, long edges) {
+            return this;
+        }
+
+        public Phase setCount(long count) {
+            return this;
+        }
+
+        public Phase setDetail(String detail) {
+            return this;
+        }
+
+        /**
+         * Ends the phase and commits its event.
+         */
+        public void end() {}
+    }
+
+    private static final Phase DISABLED = new Phase();
+    private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PhaseEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts a phase of the given type.
+     * @return the phase, which does nothing if no recording is running
+     */
+    public static Phase begin(Type type) {
+        if (!AVAILABLE)
+            return DISABLED;
+        Phase phase = FlightRecorderPhase.begin(type);
+        return phase != null ? phase : DISABLED;
+    }
+
+}
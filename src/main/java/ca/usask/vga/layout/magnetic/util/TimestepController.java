@@ -0,0 +1,86 @@
+package ca.usask.vga.layout.magnetic.util;
+
+import prefuse.util.force.ForceItem;
+import prefuse.util.force.ForceSimulator;
+
+import java.util.Iterator;
+
+/**
+ * Chooses the timestep of every iteration of a {@link ForceSimulator} layout.
+ * <p>
+ * The fixed schedule is the one of the original Prefuse layout: the timestep decays with the
+ * iterations, whatever the layout is doing. The adaptive schedule instead follows the energy of
+ * the layout, the sum of the squared forces on the items, as in Hu's adaptive cooling: the
+ * timestep grows after a few iterations in a row where the energy decreased, and shrinks as soon
+ * as it increases, which happens when the items oscillate, or when most items move at the
+ * speed limit of the simulator.
+ */
+public class TimestepController {
+
+    private static final long INITIAL_TIMESTEP = 1000L, MIN_TIMESTEP = 50L, MAX_TIMESTEP = 2000L;
+
+    /** Factor applied to the adaptive timestep when it shrinks, and inverted when it grows. */
+    private static final float COOLING = 0.9f;
+    /** Number of iterations in a row with less energy before the timestep grows. */
+    private static final int PROGRESS_STEPS = 5;
+    /** Share of the items at the speed limit above which the timestep shrinks. */
+    private static final float SATURATION = 0.5f;
+
+    private final boolean adaptive;
+    private final int numIterations;
+
+    private long timestep = INITIAL_TIMESTEP;
+    private double previousEnergy = Double.POSITIVE_INFINITY;
+    private int progress;
+
+    /**
+     * @param adaptive true to follow the energy of the layout, false for the fixed schedule
+     * @param numIterations the number of iterations of the layout, used by the fixed schedule
+     */
+    public TimestepController(boolean adaptive, int numIterations) {
+        this.adaptive = adaptive;
+        this.numIterations = numIterations;
+    }
+
+    /**
+     * Returns the timestep of the given iteration, to be called once per iteration, in order.
+     */
+    public long nextTimestep(int iteration) {
+        if (adaptive)
+            return timestep;
+        timestep *= (1.0 - iteration / (double) numIterations);
+        return timestep + MIN_TIMESTEP;
+    }
+
+    /**
+     * Measures the iteration that just ran, and adapts the timestep of the next one.
+     * Does nothing with the fixed schedule.
+     */
+    public void update(ForceSimulator m_fsim) {
+        if (!adaptive)
+            return;
+
+        float limitSq = 0.99f * m_fsim.getSpeedLimit();
+        limitSq *= limitSq;
+        double energy = 0;
+        int n = 0, saturated = 0;
+
+        Iterator<ForceItem> iter = m_fsim.getItems();
+        for (; iter.hasNext(); n++) {
+            ForceItem item = iter.next();
+            energy += item.force[0] * item.force[0] + item.force[1] * item.force[1];
+            if (item.velocity[0] * item.velocity[0] + item.velocity[1] * item.velocity[1] >= limitSq)
+                saturated++;
+        }
+
+        if (saturated > SATURATION * n || energy >= previousEnergy) {
+            progress = 0;
+            timestep = Math.max(MIN_TIMESTEP, (long) (timestep * COOLING));
+        } else if (++progress >= PROGRESS_STEPS) {
+            progress = 0;
+            timestep = Math.min(MAX_TIMESTEP, (long) (timestep / COOLING));
+        }
+        previousEnergy = energy;
+    }
+
+}
@@ -33,7 +33,7 @@ public class Vector {
 
     public float magnitude()
     {
-        return (float) sqrt(x*x + y*y);
+        return magnitude(x, y);
     }
 
     public Vector displacement(@NotNull Vector to) {
@@ -90,20 +90,12 @@ public class Vector {
 
     public float angleCos(Vector b)
     {
-        if (this.magnitude() == 0 || b.magnitude() == 0)
-            return 0;
-        float dot_product = this.dot(b) / (this.magnitude() * b.magnitude());
-        float clamped_dot_product = min(max(dot_product, -1.0f), 1.0f);
-        return (float) acos(clamped_dot_product);
+        return angleCos(x, y, b.x, b.y);
     }
 
     public float angleSin(Vector b)
     {
-        if (this.magnitude() == 0 || b.magnitude() == 0)
-            return 0;
-        float cross_product = this.cross(b) / (this.magnitude() * b.magnitude());
-        float clamped_cross_product = min(max(cross_product, -1.0f), 1.0f);
-        return (float) asin(clamped_cross_product);
+        return angleSin(x, y, b.x, b.y);
     }
 
     public Vector rotate90clockwise()
@@ -112,6 +104,33 @@ public class Vector {
         return new Vector(this.y, -this.x);
     }
 
+    // Primitive operations, for the force calculations that should not allocate vectors
+
+    public static float magnitude(float x, float y)
+    {
+        return (float) sqrt(x*x + y*y);
+    }
+
+    public static float angleCos(float ax, float ay, float bx, float by)
+    {
+        float a_magnitude = magnitude(ax, ay), b_magnitude = magnitude(bx, by);
+        if (a_magnitude == 0 || b_magnitude == 0)
+            return 0;
+        float dot_product = (ax * bx + ay * by) / (a_magnitude * b_magnitude);
+        float clamped_dot_product = min(max(dot_product, -1.0f), 1.0f);
+        return (float) acos(clamped_dot_product);
+    }
+
+    public static float angleSin(float ax, float ay, float bx, float by)
+    {
+        float a_magnitude = magnitude(ax, ay), b_magnitude = magnitude(bx, by);
+        if (a_magnitude == 0 || b_magnitude == 0)
+            return 0;
+        float cross_product = (ax * by - ay * bx) / (a_magnitude * b_magnitude);
+        float clamped_cross_product = min(max(cross_product, -1.0f), 1.0f);
+        return (float) asin(clamped_cross_product);
+    }
+
     // Number operations
 
     public static int sign(float x) {
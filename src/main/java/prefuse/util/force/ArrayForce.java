@@ -0,0 +1,52 @@
+package prefuse.util.force;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * A {@link Force} that can compute its contribution directly on the primitive
+ * columns of an {@link ArrayForceSimulator}, without going through the
+ * ForceItem and Spring objects. Forces that do not implement this interface
+ * are still supported by the ArrayForceSimulator, at the cost of copying the
+ * simulation state to and from the ForceItems on every evaluation.
+ */
+public interface ArrayForce extends Force {
+
+    /**
+     * Initialize this force function for an evaluation on the columns of the
+     * given simulator. This default implementation does nothing.
+     * @param sim the encompassing ArrayForceSimulator
+     */
+    default void initArrays(ArrayForceSimulator sim) {
+        // do nothing.
+    }
+
+    /**
+     * Add the force acting on every item (or spring) of the simulator to its
+     * <code>force</code> column.
+     * @param sim the encompassing ArrayForceSimulator
+     */
+    void getForces(ArrayForceSimulator sim);
+
+}
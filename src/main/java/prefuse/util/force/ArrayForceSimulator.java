@@ -0,0 +1,370 @@
+package prefuse.util.force;
+
+import java.util.Iterator;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * A {@link ForceSimulator} that keeps the simulation state in contiguous
+ * primitive columns instead of the float arrays of every {@link ForceItem}.
+ * The columns are indexed by {@link ForceItem#index}: the x and y values of
+ * item <code>i</code> are stored interleaved at <code>2*i</code> and
+ * <code>2*i+1</code>, so one item's coordinates share a cache line and a
+ * sweep over all the items reads memory sequentially.
+ *
+ * <p>The ForceItems and Springs remain the public interface of the
+ * simulation: the columns are loaded from the items at the start of each
+ * timestep and stored back at its end. Forces implementing
+ * {@link ArrayForce} work on the columns directly, while the other forces are
+ * evaluated on ForceItems kept up to date with the columns, so forces can be
+ * migrated one at a time. The columns are only used with an
+ * {@link ArrayIntegrator}; any other integrator runs on the ForceItems exactly
+ * as in the base ForceSimulator.</p>
+ */
+public class ArrayForceSimulator extends ForceSimulator {
+
+    /** Item locations, interleaved x and y */
+    public float[] location = new float[0];
+    /** Item locations at the start of the current step, interleaved x and y */
+    public float[] plocation = new float[0];
+    /** Item velocities, interleaved x and y */
+    public float[] velocity = new float[0];
+    /** Forces acting on the items, interleaved x and y */
+    public float[] force = new float[0];
+    /** Item masses */
+    public float[] mass = new float[0];
+    /** Temporary Runge-Kutta values, 8 per item */
+    public float[] k = new float[0];
+    /** Temporary Runge-Kutta values, 8 per item */
+    public float[] l = new float[0];
+
+    /** Spring endpoints, as item indices */
+    public int[] springItem1 = new int[0];
+    public int[] springItem2 = new int[0];
+    /** Spring coefficients and lengths, negative for the force defaults */
+    public float[] springCoeff = new float[0];
+    public float[] springLength = new float[0];
+
+    private ForceItem[] itemArray = new ForceItem[0];
+    private Spring[] springArray = new Spring[0];
+    private int itemCount, springCount;
+    private boolean dirty = true;
+
+    private Force[] forces = new Force[0];
+    private boolean legacyForces;
+
+    private final StateMonitor monitor;
+
+    /**
+     * Create a new, empty ArrayForceSimulator. An ArrayRungeKuttaIntegrator is
+     * used by default.
+     */
+    public ArrayForceSimulator(StateMonitor monitor) {
+        this(new ArrayRungeKuttaIntegrator(monitor), monitor);
+    }
+
+    /**
+     * Create a new, empty ArrayForceSimulator.
+     * @param integrator the Integrator to use
+     */
+    public ArrayForceSimulator(Integrator integrator, StateMonitor monitor) {
+        super(integrator, monitor);
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void addForce(Force f) {
+        super.addForce(f);
+
+        // a force can be both an item and a spring force, only keep it once
+        Force[] all = super.getForces();
+        int n = 0;
+
+        for (int i = 0; i < all.length; i++) {
+            boolean seen = false;
+
+            for (int j = 0; j < n && !seen; j++)
+                seen = all[j] == all[i];
+
+            if (!seen)
+                all[n++] = all[i];
+        }
+
+        forces = new Force[n];
+        System.arraycopy(all, 0, forces, 0, n);
+
+        legacyForces = false;
+        for (Force force : forces)
+            legacyForces |= !(force instanceof ArrayForce);
+    }
+
+    @Override
+    public void addItem(ForceItem item) {
+        super.addItem(item);
+        dirty = true;
+    }
+
+    @Override
+    public boolean removeItem(ForceItem item) {
+        dirty = true;
+        return super.removeItem(item);
+    }
+
+    @Override
+    public Spring addSpring(ForceItem item1, ForceItem item2, float coeff, float length) {
+        dirty = true;
+        return super.addSpring(item1, item2, coeff, length);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        dirty = true;
+    }
+
+    /**
+     * Get the ForceItem stored at the given index of the columns.
+     * @param i the item index
+     * @return the ForceItem
+     */
+    public ForceItem getItem(int i) {
+        return itemArray[i];
+    }
+
+    /**
+     * Run the simulator for one timestep.
+     * @param timestep the span of the timestep for which to run the simulator
+     */
+    @Override
+    public void runSimulator(long timestep) {
+        if (!(getIntegrator() instanceof ArrayIntegrator)) {
+            super.runSimulator(timestep);
+            return;
+        }
+
+        bind();
+        loadItems();
+
+        if (!monitor.isCancelled())
+            accumulate();
+
+        setSubStep(true);
+        if (!monitor.isCancelled()) {
+            ArrayIntegrator integrator = (ArrayIntegrator) getIntegrator();
+            if (getProfile() == null)
+                integrator.integrate(this, timestep);
+            else
+                getProfile().recordIntegrator(() -> integrator.integrate(this, timestep));
+        }
+        setSubStep(false);
+
+        storeItems();
+    }
+
+    /**
+     * Accumulate all forces acting on the items in this simulation, in the
+     * <code>force</code> column.
+     */
+    @Override
+    protected void accumulate() {
+        if (!(getIntegrator() instanceof ArrayIntegrator)) {
+            super.accumulate();
+            return;
+        }
+
+        final ForceProfile profile = getProfile();
+        long startNanos = 0, startBytes = 0;
+        if (profile != null) {
+            startNanos = System.nanoTime();
+            startBytes = ForceProfile.allocatedBytes();
+        }
+
+        final int n2 = 2 * itemCount;
+
+        for (int i = 0; i < n2; i++)
+            force[i] = 0.0f;
+
+        // Forces working on the ForceItems need to see the current columns
+        if (legacyForces) {
+            for (int i = 0; i < itemCount; i++) {
+                ForceItem item = itemArray[i];
+                item.location[0] = location[2 * i];
+                item.location[1] = location[2 * i + 1];
+                item.velocity[0] = velocity[2 * i];
+                item.velocity[1] = velocity[2 * i + 1];
+                item.force[0] = 0.0f;
+                item.force[1] = 0.0f;
+            }
+        }
+
+        // The time of each force includes its initialization
+        long[] initNanos = null, initBytes = null;
+        if (profile != null) {
+            initNanos = new long[forces.length];
+            initBytes = new long[forces.length];
+        }
+
+        // Init
+        for (int i = 0; i < forces.length && !monitor.isCancelled(); i++) {
+            long nanos = 0, bytes = 0;
+            if (profile != null) {
+                nanos = System.nanoTime();
+                bytes = ForceProfile.allocatedBytes();
+            }
+
+            if (forces[i] instanceof ArrayForce)
+                ((ArrayForce) forces[i]).initArrays(this);
+            else
+                forces[i].init(this);
+
+            if (profile != null) {
+                initNanos[i] = System.nanoTime() - nanos;
+                initBytes[i] = ForceProfile.allocatedBytes() - bytes;
+            }
+        }
+
+        // Update forces
+        for (int i = 0; i < forces.length && !monitor.isCancelled(); i++) {
+            Force f = forces[i];
+            long nanos = 0, bytes = 0;
+            if (profile != null) {
+                nanos = System.nanoTime() - initNanos[i];
+                bytes = ForceProfile.allocatedBytes() - initBytes[i];
+            }
+
+            if (f instanceof ArrayForce) {
+                ((ArrayForce) f).getForces(this);
+            } else {
+                if (f.isItemForce()) {
+                    for (int j = 0; j < itemCount && !monitor.isCancelled(); j++)
+                        f.getForce(itemArray[j]);
+                }
+
+                if (f.isSpringForce()) {
+                    for (int j = 0; j < springCount && !monitor.isCancelled(); j++)
+                        f.getForce(springArray[j]);
+                }
+            }
+
+            if (profile != null)
+                profile.recordForce(f, nanos, bytes);
+        }
+
+        if (legacyForces) {
+            for (int i = 0; i < itemCount; i++) {
+                force[2 * i] += itemArray[i].force[0];
+                force[2 * i + 1] += itemArray[i].force[1];
+            }
+        }
+
+        if (profile != null)
+            profile.recordAccumulate(startNanos, startBytes);
+    }
+
+    /**
+     * Rebuild the item and spring indices after the simulation changed.
+     */
+    private void bind() {
+        if (!dirty)
+            return;
+
+        itemCount = getItemCount();
+        springCount = getSpringCount();
+
+        if (itemArray.length < itemCount) {
+            itemArray = new ForceItem[itemCount];
+            location = new float[2 * itemCount];
+            plocation = new float[2 * itemCount];
+            velocity = new float[2 * itemCount];
+            force = new float[2 * itemCount];
+            mass = new float[itemCount];
+            k = new float[8 * itemCount];
+            l = new float[8 * itemCount];
+        }
+
+        Iterator<ForceItem> iter = getItems();
+        while (iter.hasNext()) {
+            ForceItem item = iter.next();
+            itemArray[item.index] = item;
+        }
+
+        if (springArray.length < springCount) {
+            springArray = new Spring[springCount];
+            springItem1 = new int[springCount];
+            springItem2 = new int[springCount];
+            springCoeff = new float[springCount];
+            springLength = new float[springCount];
+        }
+
+        Iterator<Spring> siter = getSprings();
+        for (int j = 0; siter.hasNext(); j++) {
+            Spring s = siter.next();
+            springArray[j] = s;
+            springItem1[j] = s.item1.index;
+            springItem2[j] = s.item2.index;
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * Copy the state of the ForceItems and Springs into the columns, as they
+     * can be modified between timesteps.
+     */
+    private void loadItems() {
+        for (int i = 0; i < itemCount; i++) {
+            ForceItem item = itemArray[i];
+            location[2 * i] = item.location[0];
+            location[2 * i + 1] = item.location[1];
+            plocation[2 * i] = item.plocation[0];
+            plocation[2 * i + 1] = item.plocation[1];
+            velocity[2 * i] = item.velocity[0];
+            velocity[2 * i + 1] = item.velocity[1];
+            mass[i] = item.mass;
+        }
+
+        for (int j = 0; j < springCount; j++) {
+            springCoeff[j] = springArray[j].coeff;
+            springLength[j] = springArray[j].length;
+        }
+    }
+
+    /**
+     * Copy the columns back into the ForceItems.
+     */
+    private void storeItems() {
+        for (int i = 0; i < itemCount; i++) {
+            ForceItem item = itemArray[i];
+            item.location[0] = location[2 * i];
+            item.location[1] = location[2 * i + 1];
+            item.plocation[0] = plocation[2 * i];
+            item.plocation[1] = plocation[2 * i + 1];
+            item.velocity[0] = velocity[2 * i];
+            item.velocity[1] = velocity[2 * i + 1];
+            item.force[0] = force[2 * i];
+            item.force[1] = force[2 * i + 1];
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package prefuse.util.force;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * An {@link Integrator} working on the primitive columns of an
+ * {@link ArrayForceSimulator} instead of the ForceItems.
+ */
+public interface ArrayIntegrator extends Integrator {
+
+    void integrate(ArrayForceSimulator sim, long timestep);
+
+    @Override
+    default void integrate(ForceSimulator sim, long timestep) {
+        if (!(sim instanceof ArrayForceSimulator))
+            throw new IllegalArgumentException("An ArrayIntegrator requires an ArrayForceSimulator");
+
+        integrate((ArrayForceSimulator) sim, timestep);
+    }
+
+}
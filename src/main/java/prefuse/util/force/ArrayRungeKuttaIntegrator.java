@@ -0,0 +1,167 @@
+package prefuse.util.force;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * Column based version of the {@link RungeKuttaIntegrator}. The intermediate
+ * Runge-Kutta values of item <code>i</code> are stored in the <code>k</code>
+ * and <code>l</code> columns at <code>8*i + 2*stage + dimension</code>.
+ *
+ * @see ArrayForceSimulator
+ */
+public class ArrayRungeKuttaIntegrator implements ArrayIntegrator {
+
+	private final StateMonitor monitor;
+
+	public ArrayRungeKuttaIntegrator(StateMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	@Override
+	public void integrate(ArrayForceSimulator sim, long timestep) {
+		float speedLimit = sim.getSpeedLimit();
+		int n = sim.getItemCount();
+		float[] location = sim.location;
+		float[] plocation = sim.plocation;
+		float[] velocity = sim.velocity;
+		float[] force = sim.force;
+		float[] mass = sim.mass;
+		float[] k = sim.k;
+		float[] l = sim.l;
+		float vx, vy, v, coeff;
+
+		for (int i = 0; i < n; i++) {
+			if (monitor.isCancelled())
+				return;
+
+			int x = 2 * i, y = x + 1, s = 8 * i;
+			coeff = timestep / mass[i];
+			plocation[x] = location[x];
+			plocation[y] = location[y];
+			k[s] = timestep * velocity[x];
+			k[s + 1] = timestep * velocity[y];
+			l[s] = coeff * force[x];
+			l[s + 1] = coeff * force[y];
+
+			// Set the position to the new predicted position
+			location[x] += 0.5f * k[s];
+			location[y] += 0.5f * k[s + 1];
+		}
+
+		// recalculate forces
+		sim.accumulate();
+
+		for (int i = 0; i < n; i++) {
+			if (monitor.isCancelled())
+				return;
+
+			int x = 2 * i, y = x + 1, s = 8 * i;
+			coeff = timestep / mass[i];
+			vx = velocity[x] + .5f * l[s];
+			vy = velocity[y] + .5f * l[s + 1];
+			v = (float) Math.sqrt(vx * vx + vy * vy);
+
+			if (v > speedLimit) {
+				vx = speedLimit * vx / v;
+				vy = speedLimit * vy / v;
+			}
+
+			k[s + 2] = timestep * vx;
+			k[s + 3] = timestep * vy;
+			l[s + 2] = coeff * force[x];
+			l[s + 3] = coeff * force[y];
+
+			// Set the position to the new predicted position
+			location[x] = plocation[x] + 0.5f * k[s + 2];
+			location[y] = plocation[y] + 0.5f * k[s + 3];
+		}
+
+		// recalculate forces
+		sim.accumulate();
+
+		for (int i = 0; i < n; i++) {
+			if (monitor.isCancelled())
+				return;
+
+			int x = 2 * i, y = x + 1, s = 8 * i;
+			coeff = timestep / mass[i];
+			vx = velocity[x] + .5f * l[s + 2];
+			vy = velocity[y] + .5f * l[s + 3];
+			v = (float) Math.sqrt(vx * vx + vy * vy);
+
+			if (v > speedLimit) {
+				vx = speedLimit * vx / v;
+				vy = speedLimit * vy / v;
+			}
+
+			k[s + 4] = timestep * vx;
+			k[s + 5] = timestep * vy;
+			l[s + 4] = coeff * force[x];
+			l[s + 5] = coeff * force[y];
+
+			// Set the position to the new predicted position
+			location[x] = plocation[x] + 0.5f * k[s + 4];
+			location[y] = plocation[y] + 0.5f * k[s + 5];
+		}
+
+		// recalculate forces
+		sim.accumulate();
+
+		for (int i = 0; i < n; i++) {
+			if (monitor.isCancelled())
+				return;
+
+			int x = 2 * i, y = x + 1, s = 8 * i;
+			coeff = timestep / mass[i];
+			vx = velocity[x] + l[s + 4];
+			vy = velocity[y] + l[s + 5];
+			v = (float) Math.sqrt(vx * vx + vy * vy);
+
+			if (v > speedLimit) {
+				vx = speedLimit * vx / v;
+				vy = speedLimit * vy / v;
+			}
+
+			k[s + 6] = timestep * vx;
+			k[s + 7] = timestep * vy;
+			l[s + 6] = coeff * force[x];
+			l[s + 7] = coeff * force[y];
+			location[x] = plocation[x] + (k[s] + k[s + 6]) / 6.0f + (k[s + 2] + k[s + 4]) / 3.0f;
+			location[y] = plocation[y] + (k[s + 1] + k[s + 7]) / 6.0f + (k[s + 3] + k[s + 5]) / 3.0f;
+
+			vx = (l[s] + l[s + 6]) / 6.0f + (l[s + 2] + l[s + 4]) / 3.0f;
+			vy = (l[s + 1] + l[s + 7]) / 6.0f + (l[s + 3] + l[s + 5]) / 3.0f;
+			v = (float) Math.sqrt(vx * vx + vy * vy);
+
+			if (v > speedLimit) {
+				vx = speedLimit * vx / v;
+				vy = speedLimit * vy / v;
+			}
+
+			velocity[x] += vx;
+			velocity[y] += vy;
+		}
+	}
+}
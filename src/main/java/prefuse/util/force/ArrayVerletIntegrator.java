@@ -0,0 +1,89 @@
+package prefuse.util.force;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * Column based version of the {@link VerletIntegrator}.
+ *
+ * @see ArrayForceSimulator
+ */
+public class ArrayVerletIntegrator implements ArrayIntegrator {
+
+	private final StateMonitor monitor;
+
+	// simulator of the last step, and the half of its timestep left to apply
+	private ArrayForceSimulator lastSim;
+	private float pendingHalfStep;
+
+	public ArrayVerletIntegrator(StateMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	@Override
+	public void integrate(ArrayForceSimulator sim, long timestep) {
+		float speedLimit = sim.getSpeedLimit();
+		float kick = getKick(sim, timestep);
+		int n = sim.getItemCount();
+		float[] location = sim.location;
+		float[] velocity = sim.velocity;
+		float[] force = sim.force;
+		float[] mass = sim.mass;
+
+		for (int i = 0; i < n; i++) {
+			if (monitor.isCancelled())
+				return;
+
+			int x = 2 * i, y = x + 1;
+			float coeff = kick / mass[i];
+			velocity[x] += coeff * force[x];
+			velocity[y] += coeff * force[y];
+			float vx = velocity[x];
+			float vy = velocity[y];
+			float v = (float) Math.sqrt(vx * vx + vy * vy);
+
+			if (v > speedLimit) {
+				velocity[x] = speedLimit * vx / v;
+				velocity[y] = speedLimit * vy / v;
+			}
+
+			location[x] += timestep * velocity[x];
+			location[y] += timestep * velocity[y];
+		}
+	}
+
+	/**
+	 * Returns the time over which the current forces change the velocities: the
+	 * second half of the previous timestep and the first half of this one.
+	 */
+	private float getKick(ArrayForceSimulator sim, long timestep) {
+		if (sim != lastSim) {
+			lastSim = sim;
+			pendingHalfStep = 0;
+		}
+		float kick = pendingHalfStep + 0.5f * timestep;
+		pendingHalfStep = 0.5f * timestep;
+		return kick;
+	}
+}
@@ -30,7 +30,7 @@ package prefuse.util.force;
  * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class DragForce extends AbstractForce {
+public class DragForce extends AbstractForce implements ArrayForce {
 
     private static String[] pnames = new String[] { "DragCoefficient" };
     
@@ -79,4 +79,16 @@ public class DragForce extends AbstractForce {
         item.force[1] -= params[DRAG_COEFF]*item.velocity[1];
     }
 
+    /**
+     * @see prefuse.util.force.ArrayForce#getForces(prefuse.util.force.ArrayForceSimulator)
+     */
+    public void getForces(ArrayForceSimulator sim) {
+        int n2 = 2*sim.getItemCount();
+        float[] velocity = sim.velocity;
+        float[] force = sim.force;
+        float c = params[DRAG_COEFF];
+        for ( int i=0; i<n2; i++ )
+            force[i] -= c*velocity[i];
+    }
+
 } // end of class DragForce
@@ -78,6 +78,8 @@ public class ForceItem implements Cloneable {
     public float[][] k;
     /** Temporary variables for Runge-Kutta integration */
     public float[][] l;
+    /** The position of this ForceItem in its ForceSimulator, -1 if not added */
+    public int index = -1;
     
     /**
      * Checks a ForceItem to make sure its values are all valid numbers
@@ -0,0 +1,176 @@
+package prefuse.util.force;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the time spent by each {@link Force} of a {@link ForceSimulator},
+ * and by its {@link Integrator} outside of the force accumulations, with the
+ * number of calls and the bytes allocated by the simulation thread.
+ * Enabled by setting a profile with {@link ForceSimulator#setProfile(ForceProfile)};
+ * without a profile the simulator does not measure anything.
+ *
+ * <p>While profiling, the forces are applied to all the items and springs one
+ * force at a time, so that each force is measured once per accumulation
+ * instead of once per item. Each item and spring still receives the forces in
+ * the order they were added. The allocations of the threads used by a parallel
+ * force are not counted.</p>
+ */
+public class ForceProfile {
+
+	/** The cumulative measures of one force or phase */
+	public static class Entry {
+		private long nanos, calls, bytes;
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		/**
+		 * @return the bytes allocated by the simulation thread, or 0 if the JVM does not report them
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		private void add(long nanos, long calls, long bytes) {
+			this.nanos += nanos;
+			this.calls += calls;
+			this.bytes += bytes;
+		}
+	}
+
+	public static final String INTEGRATOR = "Integrator";
+
+	private static final com.sun.management.ThreadMXBean THREADS = getThreadBean();
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+	private long accumulateNanos, accumulateBytes;
+
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+					&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled())
+				return (com.sun.management.ThreadMXBean) bean;
+		} catch (LinkageError e) {
+			// Not a HotSpot JVM
+		}
+		return null;
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, or 0 if the JVM does not report them
+	 */
+	public static long allocatedBytes() {
+		return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Adds the time and allocations since the given start values to the given force.
+	 */
+	public void recordForce(Force force, long startNanos, long startBytes) {
+		record(force.getClass().getSimpleName(), startNanos, startBytes, 1);
+	}
+
+	/**
+	 * Adds the time and allocations since the given start values to the
+	 * accumulations, which the integrator measures do not include.
+	 */
+	public synchronized void recordAccumulate(long startNanos, long startBytes) {
+		accumulateNanos += System.nanoTime() - startNanos;
+		accumulateBytes += allocatedBytes() - startBytes;
+	}
+
+	/**
+	 * Runs one integration step, and adds its time to the integrator, without
+	 * the accumulations of the forces done by the integrator during the step.
+	 */
+	public void recordIntegrator(Runnable integration) {
+		long startNanos = System.nanoTime(), startBytes = allocatedBytes();
+		long nestedNanos = accumulateNanos, nestedBytes = accumulateBytes;
+		integration.run();
+		nestedNanos = accumulateNanos - nestedNanos;
+		nestedBytes = accumulateBytes - nestedBytes;
+		record(INTEGRATOR, startNanos + nestedNanos, startBytes + nestedBytes, 1);
+	}
+
+	private synchronized void record(String name, long startNanos, long startBytes, long calls) {
+		long nanos = System.nanoTime() - startNanos;
+		long bytes = allocatedBytes() - startBytes;
+		entries.computeIfAbsent(name, k -> new Entry()).add(nanos, calls, bytes);
+	}
+
+	/**
+	 * Adds the measures of another profile to this one, for example to sum up
+	 * the profiles of several simulations.
+	 */
+	public synchronized void add(ForceProfile other) {
+		synchronized (other) {
+			for (Map.Entry<String, Entry> e : other.entries.entrySet())
+				entries.computeIfAbsent(e.getKey(), k -> new Entry())
+						.add(e.getValue().nanos, e.getValue().calls, e.getValue().bytes);
+			accumulateNanos += other.accumulateNanos;
+			accumulateBytes += other.accumulateBytes;
+		}
+	}
+
+	/**
+	 * @return the measures of every force by class name, and of the {@link #INTEGRATOR}
+	 */
+	public synchronized Map<String, Entry> getEntries() {
+		return new LinkedHashMap<>(entries);
+	}
+
+	/**
+	 * @return one line per force and for the integrator, the most expensive first
+	 */
+	public synchronized List<String> getReport() {
+		List<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+		sorted.sort((a, b) -> Long.compare(b.getValue().nanos, a.getValue().nanos));
+
+		List<String> lines = new ArrayList<>();
+		for (Map.Entry<String, Entry> e : sorted) {
+			Entry entry = e.getValue();
+			String line = e.getKey() + ": " + String.format("%.1f", entry.nanos / 1e6) + " ms in " + entry.calls + " calls";
+			if (THREADS != null)
+				line += ", " + String.format("%.1f", entry.bytes / 1e6) + " MB allocated";
+			lines.add(line);
+		}
+		return lines;
+	}
+
+}
@@ -44,6 +44,8 @@ public class ForceSimulator {
     private int iflen, sflen;
     private Integrator integrator;
     private float speedLimit = 1.0f;
+    private boolean subStep;
+    private ForceProfile profile;
     
     private final StateMonitor monitor;
     
@@ -164,6 +166,7 @@ public class ForceSimulator {
      * @param item the ForceItem to add
      */
     public void addItem(ForceItem item) {
+        item.index = items.size();
         items.add(item);
     }
     
@@ -172,7 +175,26 @@ public class ForceSimulator {
      * @param item the ForceItem to remove
      */
     public boolean removeItem(ForceItem item) {
-        return items.remove(item);
+        int i = items.indexOf(item);
+        if (i < 0)
+            return false;
+
+        items.remove(i);
+        item.index = -1;
+
+        // keep the indices of the following items in order
+        for (; i < items.size(); i++)
+            items.get(i).index = i;
+
+        return true;
+    }
+
+    /**
+     * Get the number of registered ForceItems.
+     * @return the number of ForceItems
+     */
+    public int getItemCount() {
+        return items.size();
     }
 
     /**
@@ -217,6 +239,7 @@ public class ForceSimulator {
 			throw new IllegalArgumentException("ForceItems must be non-null");
 		
 		Spring s = Spring.getFactory().getSpring(item1, item2, coeff, length);
+		s.index = springs.size();
 		springs.add(s);
 		
 		return s;
@@ -229,6 +252,14 @@ public class ForceSimulator {
     public Iterator<Spring> getSprings() {
         return springs.iterator();
     }
+
+    /**
+     * Get the number of registered Springs.
+     * @return the number of Springs
+     */
+    public int getSpringCount() {
+        return springs.size();
+    }
     
     /**
      * Run the simulator for one timestep.
@@ -237,14 +268,59 @@ public class ForceSimulator {
 	public void runSimulator(long timestep) {
 		if (!monitor.isCancelled())
 			accumulate();
-		if (!monitor.isCancelled())
-			integrator.integrate(this, timestep);
+		
+		setSubStep(true);
+		if (!monitor.isCancelled()) {
+			if (profile == null)
+				integrator.integrate(this, timestep);
+			else
+				profile.recordIntegrator(() -> integrator.integrate(this, timestep));
+		}
+		setSubStep(false);
+	}
+
+	/**
+	 * Get the profile recording the time spent by every force, or null if the
+	 * simulator is not profiled.
+	 * @return the profile, or null
+	 */
+	public ForceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Set a profile to record the time spent by every force and by the
+	 * integrator, or null to stop profiling.
+	 * @param profile the profile, or null
+	 */
+	public void setProfile(ForceProfile profile) {
+		this.profile = profile;
+	}
+	
+	/**
+	 * Indicates if the forces are being accumulated by the integrator in the
+	 * middle of a timestep, as done by the Runge-Kutta method. The items then
+	 * only moved by a fraction of the timestep since the first accumulation of
+	 * the step, so forces can reuse the structures built at that time.
+	 * @return true during the integration of a timestep
+	 */
+	public boolean isSubStep() {
+		return subStep;
+	}
+	
+	protected void setSubStep(boolean subStep) {
+		this.subStep = subStep;
 	}
 	
     /**
      * Accumulate all forces acting on the items in this simulation
      */
     protected void accumulate() {
+		if (profile != null) {
+			accumulateProfiled();
+			return;
+		}
+
     	// Init
 		for (int i = 0; i < iflen && !monitor.isCancelled(); i++)
 			iforces[i].init(this);
@@ -257,6 +333,11 @@ public class ForceSimulator {
     }
 
 	private void updateForceItems(Collection<ForceItem> list) {
+		if (hasParallelForce()) {
+			updateForceItemsByForce(list);
+			return;
+		}
+
 		for (ForceItem item : list) {
 			if (monitor.isCancelled())
 				return;
@@ -269,6 +350,77 @@ public class ForceSimulator {
 		}
 	}
 	
+	/**
+	 * Applies the item forces one force at a time, so that a parallel force can
+	 * evaluate all the items at once. Each item still receives the forces in the
+	 * order they were added.
+	 */
+	private void updateForceItemsByForce(Collection<ForceItem> list) {
+		for (ForceItem item : list) {
+			item.force[0] = 0.0f;
+			item.force[1] = 0.0f;
+		}
+
+		for (int i = 0; i < iflen && !monitor.isCancelled(); i++)
+			updateForceItems(iforces[i], list);
+	}
+
+	private void updateForceItems(Force force, Collection<ForceItem> list) {
+		if (force instanceof NBodyForce && ((NBodyForce) force).isParallel()) {
+			((NBodyForce) force).getForces();
+			return;
+		}
+
+		for (ForceItem item : list) {
+			if (monitor.isCancelled())
+				return;
+
+			force.getForce(item);
+		}
+	}
+
+	/**
+	 * Accumulates the forces one at a time, measuring each in the profile.
+	 */
+	private void accumulateProfiled() {
+		long startNanos = System.nanoTime(), startBytes = ForceProfile.allocatedBytes();
+
+		for (ForceItem item : items) {
+			item.force[0] = 0.0f;
+			item.force[1] = 0.0f;
+		}
+
+		for (int i = 0; i < iflen && !monitor.isCancelled(); i++) {
+			long nanos = System.nanoTime(), bytes = ForceProfile.allocatedBytes();
+			iforces[i].init(this);
+			updateForceItems(iforces[i], items);
+			profile.recordForce(iforces[i], nanos, bytes);
+		}
+
+		for (int i = 0; i < sflen && !monitor.isCancelled(); i++) {
+			long nanos = System.nanoTime(), bytes = ForceProfile.allocatedBytes();
+			sforces[i].init(this);
+			for (Spring s : springs) {
+				if (monitor.isCancelled())
+					break;
+
+				sforces[i].getForce(s);
+			}
+			profile.recordForce(sforces[i], nanos, bytes);
+		}
+
+		profile.recordAccumulate(startNanos, startBytes);
+	}
+
+	private boolean hasParallelForce() {
+		for (int i = 0; i < iflen; i++) {
+			if (iforces[i] instanceof NBodyForce && ((NBodyForce) iforces[i]).isParallel())
+				return true;
+		}
+
+		return false;
+	}
+
 	private void updateSprings(Collection<Spring> list) {
 		for (Spring s : list) {
 			if (monitor.isCancelled())
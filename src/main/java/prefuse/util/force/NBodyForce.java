@@ -1,9 +1,10 @@
 package prefuse.util.force;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /*
  * #%L
@@ -48,13 +49,26 @@ import java.util.Random;
  * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class NBodyForce extends AbstractForce {
+public class NBodyForce extends AbstractForce implements ArrayForce {
 
     /* 
      * The indexing scheme for quadtree child nodes goes row by row.
      *   0 | 1    0 -> top left,    1 -> top right
      *  -------
      *   2 | 3    2 -> bottom left, 3 -> bottom right
+     *
+     * The quadtree is stored in parallel arrays indexed by node number, the
+     * root being node 0. The children of node n are at child[4*n+i], -1 if
+     * absent, and the item held by a node is stored as an index in the item
+     * arrays, -1 if none. The arrays are kept between steps and only grow, so
+     * rebuilding the tree does not allocate.
+     *
+     * Within a timestep the tree can be refit instead of rebuilt: the items
+     * keep their nodes, and the masses and centers of mass are recomputed from
+     * the new item locations. The Barnes-Hut criterion then uses the bounds of
+     * the items of a node when they are larger than its cell, so that the error
+     * of the approximation stays bounded, and the tree is rebuilt once too many
+     * nodes have their items spread over more than REFIT_SLACK times their cell.
      */
 
     private static String[] pnames = new String[] { "GravitationalConstant", 
@@ -75,10 +89,46 @@ public class NBodyForce extends AbstractForce {
     public static final int GRAVITATIONAL_CONST = 0;
     public static final int MIN_DISTANCE = 1;
     public static final int BARNES_HUT_THETA = 2;
+
+    /** Smallest number of items for which the parallel mode splits the work. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1000;
+    /** Smallest number of items evaluated by a single parallel task. */
+    private static final int MIN_CHUNK_SIZE = 256;
+    /** Growth of a node, relative to its cell, above which it counts as spread out. */
+    private static final float REFIT_SLACK = 2.0f;
+    /** Largest fraction of spread out nodes accepted by a refit. */
+    private static final float REFIT_MAX_SPREAD = 0.125f;
     
     private float xMin, xMax, yMin, yMax;
-    private QuadTreeNodeFactory factory = new QuadTreeNodeFactory();
-    private QuadTreeNode root;
+
+    // quadtree nodes
+    private int[] child = new int[0];
+    private int[] value = new int[0];
+    private boolean[] hasChildren = new boolean[0];
+    private float[] nodeMass = new float[0];
+    private float[] comX = new float[0];
+    private float[] comY = new float[0];
+    private float[] cellSize = new float[0];
+    private float[] nodeSize = new float[0];
+    private float[] boxX1 = new float[0], boxY1 = new float[0];
+    private float[] boxX2 = new float[0], boxY2 = new float[0];
+    private int nodeCount;
+    private static final int ROOT = 0;
+
+    // items inserted since the last clear, in simulator order
+    private ForceItem[] items = new ForceItem[0];
+    private float[] itemX = new float[0];
+    private float[] itemY = new float[0];
+    private float[] itemMass = new float[0];
+    private int itemCount;
+
+    // the tree holds all the items of the simulator, built from its columns or not
+    private boolean treeComplete, treeFromArrays;
+    private boolean refit;
+
+    private boolean parallel;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
     
     private Random rand; // deterministic randomness
 
@@ -108,7 +158,7 @@ public class NBodyForce extends AbstractForce {
 		params = new float[] { gravConstant, minDistance, theta };
 		minValues = new float[] { DEFAULT_MIN_GRAV_CONSTANT, DEFAULT_MIN_DISTANCE, DEFAULT_MIN_THETA };
 		maxValues = new float[] { DEFAULT_MAX_GRAV_CONSTANT, DEFAULT_MAX_DISTANCE, DEFAULT_MAX_THETA };
-		root = factory.getQuadTreeNode();
+		clear();
 		rand = new Random(12345678L); // deterministic randomness
 	}
 
@@ -124,7 +174,64 @@ public class NBodyForce extends AbstractForce {
     protected String[] getParameterNames() {
         return pnames;
     } 
+
+    /**
+     * Enable or disable the parallel mode. In parallel mode the simulator calls
+     * {@link #getForces()} once per step instead of {@link #getForce(ForceItem)}
+     * for every item, and the items are split across the fork-join pool.
+     * @param parallel true to evaluate the forces in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Enable the parallel mode using the given pool.
+     * @param pool the fork-join pool used to evaluate the forces
+     */
+    public void setParallel(ForkJoinPool pool) {
+        this.pool = pool;
+        this.parallel = true;
+    }
+
+    /**
+     * Indicates if the forces are evaluated in parallel by {@link #getForces()}.
+     * @return true if the parallel mode is enabled
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Set the number of items below which {@link #getForces()} runs on the
+     * calling thread, since splitting small graphs costs more than it saves.
+     * @param threshold the minimum number of items to split across the pool
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
     
+    /**
+     * Enable or disable the reuse of the quadtree between the force evaluations
+     * of a timestep, see {@link ForceSimulator#isSubStep()}. The items keep their
+     * nodes even when they leave their cells; the tree is only rebuilt when more
+     * than REFIT_MAX_SPREAD of the nodes have their items spread over more than
+     * REFIT_SLACK times their cell. The forces then differ slightly from those of
+     * a rebuilt tree, so the refit is disabled by default.
+     * @param refit true to refit the quadtree within a timestep
+     */
+    public void setRefit(boolean refit) {
+        this.refit = refit;
+    }
+
+    /**
+     * Indicates if the quadtree is refit within a timestep instead of rebuilt.
+     * @return true if the refit mode is enabled
+     */
+    public boolean isRefit() {
+        return refit;
+    }
+
     /**
      * Set the bounds of the region for which to compute the n-body simulation
      * @param xMin the minimum x-coordinate
@@ -143,17 +250,57 @@ public class NBodyForce extends AbstractForce {
      * Clears the quadtree of all entries.
      */
 	public void clear() {
-		clearHelper(root);
-		root = factory.getQuadTreeNode();
+		nodeCount = 0;
+		itemCount = 0;
+		treeComplete = false;
+		newNode();
 	}
 
-	private void clearHelper(QuadTreeNode n) {
-		for (int i = 0; i < n.children.length; i++) {
-			if (n.children[i] != null)
-				clearHelper(n.children[i]);
+	private int newNode() {
+		if (nodeCount == nodeMass.length) {
+			// resize necessary
+			int cap = Math.max(64, nodeCount * 2);
+			child = Arrays.copyOf(child, 4 * cap);
+			value = Arrays.copyOf(value, cap);
+			hasChildren = Arrays.copyOf(hasChildren, cap);
+			nodeMass = Arrays.copyOf(nodeMass, cap);
+			comX = Arrays.copyOf(comX, cap);
+			comY = Arrays.copyOf(comY, cap);
+			cellSize = Arrays.copyOf(cellSize, cap);
+			nodeSize = Arrays.copyOf(nodeSize, cap);
+			boxX1 = Arrays.copyOf(boxX1, cap);
+			boxY1 = Arrays.copyOf(boxY1, cap);
+			boxX2 = Arrays.copyOf(boxX2, cap);
+			boxY2 = Arrays.copyOf(boxY2, cap);
 		}
-		
-		factory.reclaim(n);
+
+		int n = nodeCount++;
+		child[4 * n] = child[4 * n + 1] = child[4 * n + 2] = child[4 * n + 3] = -1;
+		value[n] = -1;
+		hasChildren[n] = false;
+		nodeMass[n] = 0;
+		comX[n] = 0.0f;
+		comY[n] = 0.0f;
+
+		return n;
+	}
+
+	private int addItem(ForceItem item, float x, float y, float mass) {
+		if (itemCount == itemMass.length) {
+			// resize necessary
+			int cap = Math.max(16, itemCount * 2);
+			items = Arrays.copyOf(items, cap);
+			itemX = Arrays.copyOf(itemX, cap);
+			itemY = Arrays.copyOf(itemY, cap);
+			itemMass = Arrays.copyOf(itemMass, cap);
+		}
+
+		items[itemCount] = item;
+		itemX[itemCount] = x;
+		itemY[itemCount] = y;
+		itemMass[itemCount] = mass;
+
+		return itemCount++;
 	}
 
 	/**
@@ -165,6 +312,9 @@ public class NBodyForce extends AbstractForce {
 	 */
     @Override
     public void init(ForceSimulator fsim) {
+        if (refit && fsim.isSubStep() && refit(fsim))
+            return;
+        
         clear(); // clear internal state
         
         // compute and squarify bounds of quadtree
@@ -201,12 +351,176 @@ public class NBodyForce extends AbstractForce {
 			if (monitor.isCancelled())
         		return;
 			
-			ForceItem item = itemIter.next();
-			insert(item);
+			insert(itemIter.next());
+		}
+		
+		// drop references to items of previous steps
+		Arrays.fill(items, itemCount, items.length, null);
+
+		// calculate magnitudes and centers of mass
+		calcMass();
+		treeComplete = !monitor.isCancelled();
+		treeFromArrays = false;
+	}
+
+	/**
+	 * Initialize the simulation from the columns of the enclosing simulation.
+	 * The force is then computed for all the items by
+	 * {@link #getForces(ArrayForceSimulator)}.
+	 * 
+	 * @param sim the enclosing ArrayForceSimulator
+	 */
+	@Override
+	public void initArrays(ArrayForceSimulator sim) {
+		if (refit && sim.isSubStep() && refitArrays(sim))
+			return;
+
+		clear(); // clear internal state
+
+		int n = sim.getItemCount();
+		float[] location = sim.location;
+
+		// compute and squarify bounds of quadtree
+		float x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE;
+		float x2 = Float.MIN_VALUE, y2 = Float.MIN_VALUE;
+
+		for (int i = 0; i < n; i++) {
+			float x = location[2 * i];
+			float y = location[2 * i + 1];
+			if (x < x1) x1 = x;
+			if (y < y1) y1 = y;
+			if (x > x2) x2 = x;
+			if (y > y2) y2 = y;
 		}
 
+		float dx = x2 - x1, dy = y2 - y1;
+
+		if (dx > dy)
+			y2 = y1 + dx;
+		else
+			x2 = x1 + dy;
+
+		setBounds(x1, y1, x2, y2);
+
+		// insert items into quadtree, item i of the tree is item i of the simulator
+		for (int i = 0; i < n; i++) {
+			if (monitor.isCancelled())
+				return;
+
+			insert(addItem(null, location[2 * i], location[2 * i + 1], sim.mass[i]), ROOT, xMin, yMin, xMax, yMax);
+		}
+
+		Arrays.fill(items, 0, items.length, null);
+
 		// calculate magnitudes and centers of mass
-		calcMass(root, fsim);
+		calcMass();
+		treeComplete = !monitor.isCancelled();
+		treeFromArrays = true;
+	}
+
+	/**
+	 * Moves the items of the simulator in the existing quadtree.
+	 * @return false if the quadtree has to be rebuilt
+	 */
+	private boolean refit(ForceSimulator fsim) {
+		if (!treeComplete || treeFromArrays || fsim.getItemCount() != itemCount)
+			return false;
+
+		Iterator<ForceItem> itemIter = fsim.getItems();
+
+		for (int i = 0; itemIter.hasNext(); i++) {
+			ForceItem item = itemIter.next();
+			if (items[i] != item)
+				return false;
+
+			itemX[i] = item.location[0];
+			itemY[i] = item.location[1];
+			itemMass[i] = item.mass;
+		}
+
+		return refitNodes();
+	}
+
+	/**
+	 * Moves the items of the simulator columns in the existing quadtree.
+	 * @return false if the quadtree has to be rebuilt
+	 */
+	private boolean refitArrays(ArrayForceSimulator sim) {
+		int n = sim.getItemCount();
+
+		if (!treeComplete || !treeFromArrays || n != itemCount)
+			return false;
+
+		float[] location = sim.location;
+
+		for (int i = 0; i < n; i++) {
+			itemX[i] = location[2 * i];
+			itemY[i] = location[2 * i + 1];
+			itemMass[i] = sim.mass[i];
+		}
+
+		return refitNodes();
+	}
+
+	/**
+	 * Computes the masses and centers of mass of all the nodes from the current
+	 * item locations, like {@link #calcMass()}, along with the bounding boxes of
+	 * their items.
+	 * @return false if the nodes grew too much for the tree to be kept
+	 */
+	private boolean refitNodes() {
+		int spread = 0, maxSpread = (int) (REFIT_MAX_SPREAD * nodeCount);
+
+		for (int n = nodeCount - 1; n >= 0; n--) {
+			if (monitor.isCancelled())
+				return false;
+
+			float xcom = 0, ycom = 0;
+			float mass = 0;
+			float x1 = Float.MAX_VALUE, y1 = Float.MAX_VALUE;
+			float x2 = -Float.MAX_VALUE, y2 = -Float.MAX_VALUE;
+
+			if (hasChildren[n]) {
+				for (int i = 0; i < 4; i++) {
+					int c = child[4 * n + i];
+					if (c >= 0) {
+						mass += nodeMass[c];
+						xcom += nodeMass[c] * comX[c];
+						ycom += nodeMass[c] * comY[c];
+						x1 = Math.min(x1, boxX1[c]);
+						y1 = Math.min(y1, boxY1[c]);
+						x2 = Math.max(x2, boxX2[c]);
+						y2 = Math.max(y2, boxY2[c]);
+					}
+				}
+			}
+
+			int v = value[n];
+			if (v >= 0) {
+				mass += itemMass[v];
+				xcom += itemMass[v] * itemX[v];
+				ycom += itemMass[v] * itemY[v];
+				x1 = Math.min(x1, itemX[v]);
+				y1 = Math.min(y1, itemY[v]);
+				x2 = Math.max(x2, itemX[v]);
+				y2 = Math.max(y2, itemY[v]);
+			}
+
+			float size = Math.max(x2 - x1, y2 - y1);
+			if (size > REFIT_SLACK * cellSize[n] && ++spread > maxSpread)
+				return false;
+
+			nodeMass[n] = mass;
+			comX[n] = xcom / mass;
+			comY[n] = ycom / mass;
+			boxX1[n] = x1;
+			boxY1[n] = y1;
+			boxX2[n] = x2;
+			boxY2[n] = y2;
+			nodeSize[n] = Math.max(cellSize[n], size);
+		}
+
+		return true;
 	}
 
 	/**
@@ -217,48 +531,53 @@ public class NBodyForce extends AbstractForce {
      */
     public void insert(ForceItem item) {
         // insert item into the quadtrees
-        insert(item, root, xMin, yMin, xMax, yMax);
+        int p = addItem(item, item.location[0], item.location[1], item.mass);
+        insert(p, ROOT, xMin, yMin, xMax, yMax);
+        treeComplete = false;
     }
 
-	private void insert(ForceItem p, QuadTreeNode n, float x1, float y1, float x2, float y2) {
+	private void insert(int p, int n, float x1, float y1, float x2, float y2) {
         // try to insert particle p at node n in the quadtree
         // by construction, each leaf will contain either 1 or 0 particles
-		if (n.hasChildren) {
+		cellSize[n] = nodeSize[n] = x2 - x1;
+		
+		if (hasChildren[n]) {
 			// n contains more than 1 particle
 			insertHelper(p, n, x1, y1, x2, y2);
-		} else if (n.value != null) {
+		} else if (value[n] >= 0) {
 			// n contains 1 particle
-			if (isSameLocation(n.value, p)) {
+			if (isSameLocation(value[n], p)) {
 				insertHelper(p, n, x1, y1, x2, y2);
 			} else {
-				ForceItem v = n.value;
-				n.value = null;
+				int v = value[n];
+				value[n] = -1;
 				insertHelper(v, n, x1, y1, x2, y2);
 				insertHelper(p, n, x1, y1, x2, y2);
 			}
 		} else {
 			// n is empty, so is a leaf
-			n.value = p;
+			value[n] = p;
 		}
 	}
 
-	private static boolean isSameLocation(ForceItem f1, ForceItem f2) {
-		float dx = Math.abs(f1.location[0] - f2.location[0]);
-		float dy = Math.abs(f1.location[1] - f2.location[1]);
+	private boolean isSameLocation(int p1, int p2) {
+		float dx = Math.abs(itemX[p1] - itemX[p2]);
+		float dy = Math.abs(itemY[p1] - itemY[p2]);
 		
 		return dx < 0.01 && dy < 0.01;
 	}
     
-	private void insertHelper(ForceItem p, QuadTreeNode n, float x1, float y1, float x2, float y2) {
-		float x = p.location[0], y = p.location[1];
+	private void insertHelper(int p, int n, float x1, float y1, float x2, float y2) {
+		float x = itemX[p], y = itemY[p];
 		float splitx = (x1 + x2) / 2;
 		float splity = (y1 + y2) / 2;
 		int i = (x >= splitx ? 1 : 0) + (y >= splity ? 2 : 0);
 
 		// create new child node, if necessary
-		if (n.children[i] == null) {
-			n.children[i] = factory.getQuadTreeNode();
-			n.hasChildren = true;
+		if (child[4 * n + i] < 0) {
+			int c = newNode(); // may grow the arrays
+			child[4 * n + i] = c;
+			hasChildren[n] = true;
 		}
 
 		// update bounds
@@ -273,35 +592,44 @@ public class NBodyForce extends AbstractForce {
 			y2 = splity;
 
 		// recurse
-		insert(p, n.children[i], x1, y1, x2, y2);
+		insert(p, child[4 * n + i], x1, y1, x2, y2);
 	}
 
-	private void calcMass(QuadTreeNode n, ForceSimulator fsim) {
-		float xcom = 0, ycom = 0;
-		n.mass = 0;
-
-		if (n.hasChildren) {
-			for (int i = 0; i < n.children.length; i++) {
-				if (monitor.isCancelled())
-					return;
+	/**
+	 * Computes the masses and centers of mass of all the nodes. Children are
+	 * always created after their parent, so a reverse sweep over the nodes
+	 * visits every child before its parent.
+	 */
+	private void calcMass() {
+		for (int n = nodeCount - 1; n >= 0; n--) {
+			if (monitor.isCancelled())
+				return;
 
-				if (n.children[i] != null) {
-					calcMass(n.children[i], fsim);
-					n.mass += n.children[i].mass;
-					xcom += n.children[i].mass * n.children[i].com[0];
-					ycom += n.children[i].mass * n.children[i].com[1];
+			float xcom = 0, ycom = 0;
+			float mass = 0;
+
+			if (hasChildren[n]) {
+				for (int i = 0; i < 4; i++) {
+					int c = child[4 * n + i];
+					if (c >= 0) {
+						mass += nodeMass[c];
+						xcom += nodeMass[c] * comX[c];
+						ycom += nodeMass[c] * comY[c];
+					}
 				}
 			}
-		}
 
-		if (n.value != null) {
-			n.mass += n.value.mass;
-			xcom += n.value.mass * n.value.location[0];
-			ycom += n.value.mass * n.value.location[1];
-		}
+			int v = value[n];
+			if (v >= 0) {
+				mass += itemMass[v];
+				xcom += itemMass[v] * itemX[v];
+				ycom += itemMass[v] * itemY[v];
+			}
 
-		n.com[0] = xcom / n.mass;
-		n.com[1] = ycom / n.mass;
+			nodeMass[n] = mass;
+			comX[n] = xcom / mass;
+			comY[n] = ycom / mass;
+		}
 	}
 
     /**
@@ -310,12 +638,104 @@ public class NBodyForce extends AbstractForce {
      */
     @Override
     public void getForce(ForceItem item) {
-		forceHelper(item, root, xMin, yMin, xMax, yMax);
+		int self = item.index >= 0 && item.index < itemCount && items[item.index] == item ? item.index : indexOf(item);
+		forceHelper(self, item.location[0], item.location[1], item.mass, ROOT, rand, item.force, 0);
     }
+
+	private int indexOf(ForceItem item) {
+		for (int i = 0; i < itemCount; i++) {
+			if (items[i] == item)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Calculates the force vectors acting on all the items added by the last call
+	 * to {@link #init(ForceSimulator)}. In parallel mode the items are split into
+	 * ranges evaluated on the fork-join pool, and the same-location jitter of every
+	 * item is seeded from its index, so it does not depend on the number of cores.
+	 */
+	public void getForces() {
+		getForces(null);
+	}
+
+	/**
+	 * Adds the force vectors acting on all the items to the force column of the
+	 * simulator, after a call to {@link #initArrays(ArrayForceSimulator)}. The
+	 * items are evaluated in parallel in the same way as {@link #getForces()}.
+	 * 
+	 * @param sim the enclosing ArrayForceSimulator, or null to add the forces
+	 *  to the ForceItems inserted by the last call to {@link #init(ForceSimulator)}
+	 */
+	@Override
+	public void getForces(ArrayForceSimulator sim) {
+		float[] out = sim == null ? null : sim.force;
+
+		if (!parallel || itemCount < parallelThreshold) {
+			for (int i = 0; i < itemCount && !monitor.isCancelled(); i++)
+				forceAt(i, rand, out);
+			return;
+		}
+
+		int chunk = Math.max(MIN_CHUNK_SIZE, itemCount / (pool.getParallelism() * 4));
+		pool.invoke(new ForceTask(0, itemCount, chunk, rand.nextLong(), out));
+	}
+
+	private void forceAt(int i, Random random, float[] out) {
+		if (out == null)
+			forceHelper(i, itemX[i], itemY[i], itemMass[i], ROOT, random, items[i].force, 0);
+		else
+			forceHelper(i, itemX[i], itemY[i], itemMass[i], ROOT, random, out, 2 * i);
+	}
+
+	/**
+	 * Evaluates the n-body force for a range of items, splitting the range in
+	 * half until it is no larger than the chunk size.
+	 */
+	private final class ForceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to, chunk;
+		private final long seed;
+		private final float[] out;
+
+		ForceTask(int from, int to, int chunk, long seed, float[] out) {
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+			this.seed = seed;
+			this.out = out;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunk) {
+				Random random = new Random();
+				for (int i = from; i < to; i++) {
+					if (monitor.isCancelled())
+						return;
+					// the seed depends only on the item, not on the chunks or the worker thread
+					random.setSeed(seed ^ (i * 0x9E3779B97F4A7C15L));
+					forceAt(i, random, out);
+				}
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new ForceTask(from, mid, chunk, seed, out), new ForceTask(mid, to, chunk, seed, out));
+		}
+	}
     
-	private void forceHelper(ForceItem item, QuadTreeNode n, float x1, float y1, float x2, float y2) {
-		float dx = n.com[0] - item.location[0];
-		float dy = n.com[1] - item.location[1];
+	/**
+	 * Adds the force acting on item <code>self</code>, located at (x, y), from
+	 * the items under node n to <code>out[o]</code> and <code>out[o+1]</code>.
+	 */
+	private void forceHelper(int self, float x, float y, float mass, int n, Random rand, float[] out, int o) {
+		float dx = comX[n] - x;
+		float dy = comY[n] - y;
 		float r = (float) Math.sqrt(dx * dx + dy * dy);
 		boolean same = false;
         
@@ -331,80 +751,31 @@ public class NBodyForce extends AbstractForce {
         
         // the Barnes-Hut approximation criteria is if the ratio of the size of the quadtree box
         // to the distance between the point and the box's center of mass is beneath some threshold theta.
-		if ((!n.hasChildren && n.value != item) || (!same && (x2 - x1) / r < params[BARNES_HUT_THETA])) {
+		if ((!hasChildren[n] && value[n] != self) || (!same && nodeSize[n] / r < params[BARNES_HUT_THETA])) {
 			if (minDist)
 				return;
 			
 			// either only 1 particle or we meet criteria for Barnes-Hut approximation, so calc force
-			float v = params[GRAVITATIONAL_CONST] * item.mass * n.mass / (r * r * r);
-			item.force[0] += v * dx;
-			item.force[1] += v * dy;
-		} else if (n.hasChildren) {
+			float v = params[GRAVITATIONAL_CONST] * mass * nodeMass[n] / (r * r * r);
+			out[o] += v * dx;
+			out[o + 1] += v * dy;
+		} else if (hasChildren[n]) {
 			// recurse for more accurate calculation
-			float splitx = (x1 + x2) / 2;
-			float splity = (y1 + y2) / 2;
-			
-			for (int i = 0; i < n.children.length; i++) {
-				if (n.children[i] != null) {
-					forceHelper(item, n.children[i], (i == 1 || i == 3 ? splitx : x1), (i > 1 ? splity : y1),
-							(i == 1 || i == 3 ? x2 : splitx), (i > 1 ? y2 : splity));
-				}
+			for (int i = 0; i < 4; i++) {
+				int c = child[4 * n + i];
+				if (c >= 0)
+					forceHelper(self, x, y, mass, c, rand, out, o);
 			}
 			
 			if (minDist)
 				return;
 			
-			if (n.value != null && n.value != item) {
-				float v = params[GRAVITATIONAL_CONST] * item.mass * n.value.mass / (r * r * r);
-				item.force[0] += v * dx;
-				item.force[1] += v * dy;
+			int v = value[n];
+			if (v >= 0 && v != self) {
+				float f = params[GRAVITATIONAL_CONST] * mass * itemMass[v] / (r * r * r);
+				out[o] += f * dx;
+				out[o + 1] += f * dy;
 			}
 		}
 	}
-
-    /**
-	 * Represents a node in the quadtree.
-	 */
-	public static final class QuadTreeNode {
-
-		public QuadTreeNode() {
-			com = new float[] { 0.0f, 0.0f };
-			children = new QuadTreeNode[4];
-		}
-
-		boolean hasChildren = false;
-		float mass; // total mass held by this node
-		float[] com; // center of mass of this node
-		ForceItem value; // ForceItem in this node, null if node has children
-		QuadTreeNode[] children; // children nodes
-	}
-
-    /**
-     * Helper class to minimize number of object creations across multiple
-     * uses of the quadtree.
-     */
-    public static final class QuadTreeNodeFactory {
-
-		private int maxNodes = 50000;
-		private ArrayList<QuadTreeNode> nodes = new ArrayList<>();
-
-		public QuadTreeNode getQuadTreeNode() {
-			if (nodes.size() > 0)
-				return (QuadTreeNode) nodes.remove(nodes.size() - 1);
-			else
-				return new QuadTreeNode();
-		}
-
-		public void reclaim(QuadTreeNode n) {
-			n.mass = 0;
-			n.com[0] = 0.0f;
-			n.com[1] = 0.0f;
-			n.value = null;
-			n.hasChildren = false;
-			Arrays.fill(n.children, null);
-
-			if (nodes.size() < maxNodes)
-				nodes.add(n);
-		}
-	}
 }
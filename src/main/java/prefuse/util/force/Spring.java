@@ -66,11 +66,15 @@ public class Spring {
     public float length;
     /** The spring tension co-efficient */
     public float coeff;
+    /** The position of this Spring in its ForceSimulator, -1 if not added */
+    public int index = -1;
     
     /**
      * The SpringFactory is responsible for generating Spring instances
      * and maintaining an object pool of Springs to reduce garbage collection
-     * overheads while force simulations are running.
+     * overheads while force simulations are running. The pool is shared by
+     * all the simulations, so it is synchronized to allow several simulations
+     * to run in parallel.
      */
     public static final class SpringFactory {
         private int maxSprings = 10000;
@@ -79,7 +83,7 @@ public class Spring {
         /**
          * Get a Spring instance and set it to the given parameters.
          */
-        public Spring getSpring(ForceItem f1, ForceItem f2, float k, float length) {
+        public synchronized Spring getSpring(ForceItem f1, ForceItem f2, float k, float length) {
             if ( springs.size() > 0 ) {
                 Spring s = (Spring)springs.remove(springs.size()-1);
                 s.item1 = f1;
@@ -94,9 +98,10 @@ public class Spring {
         /**
          * Reclaim a Spring into the object pool.
          */
-        public void reclaim(Spring s) {
+        public synchronized void reclaim(Spring s) {
             s.item1 = null;
             s.item2 = null;
+            s.index = -1;
             if ( springs.size() < maxSprings )
                 springs.add(s);
         }
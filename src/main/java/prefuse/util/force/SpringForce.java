@@ -32,7 +32,7 @@ import java.util.Random;
  * 
  * @author <a href="http://jheer.org">jeffrey heer</a>
  */
-public class SpringForce extends AbstractForce {
+public class SpringForce extends AbstractForce implements ArrayForce {
 
     private static String[] pnames 
         = new String[] { "SpringCoefficient", "DefaultSpringLength" };
@@ -111,5 +111,33 @@ public class SpringForce extends AbstractForce {
         item2.force[0] += -coeff*dx;
         item2.force[1] += -coeff*dy;
     }
+
+    /**
+     * Calculates the force vectors acting on the items due to all the springs
+     * of the simulator.
+     * @see prefuse.util.force.ArrayForce#getForces(prefuse.util.force.ArrayForceSimulator)
+     */
+    public void getForces(ArrayForceSimulator sim) {
+        int n = sim.getSpringCount();
+        float[] location = sim.location;
+        float[] force = sim.force;
+        for ( int j=0; j<n; j++ ) {
+            int i1 = 2*sim.springItem1[j], i2 = 2*sim.springItem2[j];
+            float length = (sim.springLength[j] < 0 ? params[SPRING_LENGTH] : sim.springLength[j]);
+            float dx = location[i2]-location[i1], dy = location[i2+1]-location[i1+1];
+            float r  = (float)Math.sqrt(dx*dx+dy*dy);
+            if ( r == 0.0 ) {
+                dx = (rand.nextFloat()-0.5f) / 50.0f;
+                dy = (rand.nextFloat()-0.5f) / 50.0f;
+                r  = (float)Math.sqrt(dx*dx+dy*dy);
+            }
+            float d  = r-length;
+            float coeff = (sim.springCoeff[j] < 0 ? params[SPRING_COEFF] : sim.springCoeff[j])*d/r;
+            force[i1] += coeff*dx;
+            force[i1+1] += coeff*dy;
+            force[i2] += -coeff*dx;
+            force[i2+1] += -coeff*dy;
+        }
+    }
     
 } // end of class SpringForce
@@ -0,0 +1,97 @@
+package prefuse.util.force;
+
+import java.util.Iterator;
+
+/*
+ * #%L
+ * Cytoscape Prefuse Layout Impl (layout-prefuse-impl)
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2006 - 2021 The Cytoscape Consortium
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as 
+ * published by the Free Software Foundation, either version 2.1 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ * #L%
+ */
+
+/**
+ * Updates velocity and position data using the velocity Verlet method, in its
+ * leapfrog form. Each step completes the velocity update of the previous step
+ * and starts the next one with the same forces, then moves the items with the
+ * velocity at the middle of the step. It is symplectic, so it is much more
+ * stable than Euler's method, and unlike the Runge-Kutta method it only uses the
+ * forces accumulated by the simulator once per timestep.
+ * <p>
+ * The velocities of the items are those at the middle of the last step, and the
+ * integrator remembers the last timestep of the simulator, so an instance must
+ * not be shared between simulators running at the same time.
+ *
+ * @see RungeKuttaIntegrator
+ * @see EulerIntegrator
+ */
+public class VerletIntegrator implements Integrator {
+
+	private final StateMonitor monitor;
+
+	// simulator of the last step, and the half of its timestep left to apply
+	private ForceSimulator lastSim;
+	private float pendingHalfStep;
+
+	public VerletIntegrator(StateMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	@Override
+	public void integrate(ForceSimulator sim, long timestep) {
+		float speedLimit = sim.getSpeedLimit();
+		float kick = getKick(sim, timestep);
+		Iterator<ForceItem> iter = sim.getItems();
+
+		while (iter.hasNext()) {
+			if (monitor.isCancelled())
+				return;
+
+			ForceItem item = iter.next();
+			float coeff = kick / item.mass;
+			item.velocity[0] += coeff * item.force[0];
+			item.velocity[1] += coeff * item.force[1];
+			float vx = item.velocity[0];
+			float vy = item.velocity[1];
+			float v = (float) Math.sqrt(vx * vx + vy * vy);
+
+			if (v > speedLimit) {
+				item.velocity[0] = speedLimit * vx / v;
+				item.velocity[1] = speedLimit * vy / v;
+			}
+
+			item.location[0] += timestep * item.velocity[0];
+			item.location[1] += timestep * item.velocity[1];
+		}
+	}
+
+	/**
+	 * Returns the time over which the current forces change the velocities: the
+	 * second half of the previous timestep and the first half of this one.
+	 */
+	private float getKick(ForceSimulator sim, long timestep) {
+		if (sim != lastSim) {
+			lastSim = sim;
+			pendingHalfStep = 0;
+		}
+		float kick = pendingHalfStep + 0.5f * timestep;
+		pendingHalfStep = 0.5f * timestep;
+		return kick;
+	}
+}